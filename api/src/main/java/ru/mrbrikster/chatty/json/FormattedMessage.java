@@ -12,38 +12,51 @@ import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+/**
+ * Message of legacy and JSON parts.
+ *
+ * The built message is kept until the message is changed by {@link #append} or {@link #replace},
+ * so sending it to many players, to BungeeCord and to console builds and serializes it once.
+ * Parts must not be changed after they are added.
+ */
 public class FormattedMessage {
 
     private List<MessagePart> messageParts = new ArrayList<>();
 
+    // Built message and its readable text, reset when the message is changed
+    private FancyMessage fancyMessage;
+    private String readableText;
+
     public FormattedMessage(String text) {
         this.messageParts.add(new LegacyMessagePart(text));
     }
 
     public FormattedMessage send(Player player) {
-        buildFancyMessage().send(player);
+        getFancyMessage().send(player);
 
         return this;
     }
 
     public FormattedMessage send(Collection<? extends Player> players) {
-        buildFancyMessage().send(players);
+        getFancyMessage().send(players);
 
         return this;
     }
 
     public void sendConsole() {
-        Bukkit.getConsoleSender().sendMessage(ChatColor.stripColor(buildFancyMessage().toOldMessageFormat()));
+        Bukkit.getConsoleSender().sendMessage(ChatColor.stripColor(toReadableText()));
     }
 
     public FormattedMessage append(FormattedMessage formattedMessage) {
         this.messageParts.addAll(formattedMessage.messageParts);
+        invalidate();
 
         return this;
     }
 
     public FormattedMessage append(MessagePart messagePart) {
         this.messageParts.add(messagePart);
+        invalidate();
 
         return this;
     }
@@ -75,6 +88,7 @@ public class FormattedMessage {
      */
     public FormattedMessage replace(Pattern pattern, List<MessagePart> parts) {
         List<MessagePart> updatedMessageParts = new ArrayList<>();
+        boolean replaced = false;
 
         for (MessagePart messagePart : messageParts) {
             if (messagePart instanceof LegacyMessagePart) {
@@ -88,6 +102,7 @@ public class FormattedMessage {
                     updatedMessageParts.add(new LegacyMessagePart(partText.substring(firstIndex, matcher.start())));
                     updatedMessageParts.addAll(parts);
                     firstIndex = matcher.end();
+                    replaced = true;
                 }
 
                 String tail = partText.substring(firstIndex);
@@ -100,7 +115,11 @@ public class FormattedMessage {
             }
         }
 
-        this.messageParts = updatedMessageParts;
+        // Built message is kept if nothing is found
+        if (replaced) {
+            this.messageParts = updatedMessageParts;
+            invalidate();
+        }
 
         return this;
     }
@@ -151,7 +170,20 @@ public class FormattedMessage {
     */
 
     public String getLastColors() {
-        return buildFancyMessage().getLastColors();
+        return getFancyMessage().getLastColors();
+    }
+
+    private FancyMessage getFancyMessage() {
+        if (fancyMessage == null) {
+            this.fancyMessage = buildFancyMessage();
+        }
+
+        return fancyMessage;
+    }
+
+    private void invalidate() {
+        this.fancyMessage = null;
+        this.readableText = null;
     }
 
     private FancyMessage buildFancyMessage() {
@@ -169,11 +201,19 @@ public class FormattedMessage {
     }
 
     public String toReadableText() {
-        return buildFancyMessage().toOldMessageFormat();
+        if (readableText == null) {
+            this.readableText = getFancyMessage().toOldMessageFormat();
+        }
+
+        return readableText;
     }
 
+    /**
+     * Returns JSON of the message, serialized once until the message is changed
+     * @return JSON string
+     */
     public String toJSONString() {
-        return buildFancyMessage().toJSONString();
+        return getFancyMessage().toJSONString();
     }
 
 }
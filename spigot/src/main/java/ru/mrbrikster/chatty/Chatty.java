@@ -12,15 +12,22 @@ import ru.mrbrikster.chatty.bungee.BungeeCordListener;
 import ru.mrbrikster.chatty.chat.Chat;
 import ru.mrbrikster.chatty.chat.ChatListener;
 import ru.mrbrikster.chatty.chat.ChatManager;
-import ru.mrbrikster.chatty.chat.JsonStorage;
+import ru.mrbrikster.chatty.chat.PlayerGrid;
 import ru.mrbrikster.chatty.commands.CommandManager;
 import ru.mrbrikster.chatty.dependencies.DependencyManager;
 import ru.mrbrikster.chatty.dependencies.PlayerTagManager;
 import ru.mrbrikster.chatty.miscellaneous.MiscellaneousListener;
 import ru.mrbrikster.chatty.moderation.ModerationManager;
+import ru.mrbrikster.chatty.moderation.ModerationPipeline;
+import ru.mrbrikster.chatty.moderation.MuteManager;
 import ru.mrbrikster.chatty.notifications.NotificationManager;
+import ru.mrbrikster.chatty.storage.IgnoreIndex;
+import ru.mrbrikster.chatty.storage.JsonStorage;
+import ru.mrbrikster.chatty.storage.SqliteStorage;
+import ru.mrbrikster.chatty.storage.StorageBackend;
 import ru.mrbrikster.chatty.util.Debugger;
 import ru.mrbrikster.chatty.util.Messages;
+import ru.mrbrikster.chatty.util.PermissionCache;
 
 import java.io.File;
 import java.util.HashMap;
@@ -35,6 +42,7 @@ public final class Chatty extends BukkitBasePlugin {
     private static Chatty instance;
     private static ChattyApi api;
     private Configuration configuration;
+    private volatile ChattySettings settings;
 
     public static Chatty instance() {
         return Chatty.instance;
@@ -52,6 +60,14 @@ public final class Chatty extends BukkitBasePlugin {
         return getExact(Messages.class);
     }
 
+    /**
+     * Returns snapshot of chat options, that is replaced on configuration reload
+     * @return current settings
+     */
+    public ChattySettings settings() {
+        return settings;
+    }
+
     @NotNull
     @SuppressWarnings("all")
     public <T> Optional<T> get(Class<T> clazz) {
@@ -94,16 +110,25 @@ public final class Chatty extends BukkitBasePlugin {
         }
 
         register(Configuration.class, configuration);
+
+        this.settings = new ChattySettings(configuration, getLogger());
+        configuration.onReload(config -> this.settings = new ChattySettings(configuration, getLogger()));
+
         register(ModerationManager.class, new ModerationManager(this));
-        register(JsonStorage.class, new JsonStorage(this));
+        register(StorageBackend.class, createStorage());
 
         register(PlayerTagManager.class, new PlayerTagManager(this));
+        register(PermissionCache.class, new PermissionCache(this));
+        register(ModerationPipeline.class, new ModerationPipeline(this));
         register(ChatManager.class, new ChatManager(this));
 
         register(DependencyManager.class, new DependencyManager(this));
 
         register(Messages.class, new Messages(this));
         register(Debugger.class, new Debugger(this));
+        register(PlayerGrid.class, new PlayerGrid(this));
+        register(IgnoreIndex.class, new IgnoreIndex(this));
+        register(MuteManager.class, new MuteManager(this));
 
         configuration.onReload(config -> {
             unregister(Messages.class);
@@ -151,6 +176,25 @@ public final class Chatty extends BukkitBasePlugin {
                 chat.getBukkitCommand().unregister(Chatty.instance());
             }
         });
+
+        this.getExact(ModerationManager.class).close();
+        this.getExact(ChatManager.class).getLogger().close();
+        this.getExact(StorageBackend.class).close();
+    }
+
+    private StorageBackend createStorage() {
+        String type = configuration.getNode("general.storage.type").getAsString("json");
+
+        if (type.equalsIgnoreCase("sqlite")) {
+            try {
+                return new SqliteStorage(this);
+            } catch (Exception e) {
+                getLogger().warning("Cannot initialize SQLite storage, falling back to JSON storage");
+                e.printStackTrace();
+            }
+        }
+
+        return new JsonStorage(this);
     }
 
     private void runMetrics() {
@@ -202,6 +246,9 @@ public final class Chatty extends BukkitBasePlugin {
             metrics.addCustomChart(new Metrics.SimplePie("uuid",
                     () -> String.valueOf(configuration.getNode("general.uuid").getAsBoolean(false))));
 
+            metrics.addCustomChart(new Metrics.SimplePie("storage",
+                    () -> configuration.getNode("general.storage.type").getAsString("json")));
+
             metrics.addCustomChart(new Metrics.SimplePie("bungeecord",
                     () -> String.valueOf(configuration.getNode("general.bungeecord").getAsBoolean(false))));
 
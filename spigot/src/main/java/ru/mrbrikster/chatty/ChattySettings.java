@@ -0,0 +1,133 @@
+package ru.mrbrikster.chatty;
+
+import com.google.common.collect.ImmutableList;
+import lombok.Getter;
+import org.bukkit.ChatColor;
+import org.bukkit.Sound;
+import ru.mrbrikster.baseplugin.config.Configuration;
+import ru.mrbrikster.baseplugin.config.ConfigurationNode;
+import ru.mrbrikster.chatty.util.TextUtil;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * Immutable snapshot of options used while processing chat messages.
+ * A new snapshot is created on every configuration reload,
+ * so message handlers read plain fields instead of resolving configuration paths.
+ */
+@Getter
+public final class ChattySettings {
+
+    private static final Function<String, String> COLORIZE = line -> ChatColor.translateAlternateColorCodes('&', line);
+
+    private final boolean uuid;
+    private final boolean log;
+    private final boolean bungeeCord;
+    private final boolean completelyCancel;
+    private final boolean keepOldRecipients;
+
+    private final boolean spyEnabled;
+    private final String spyChatFormat;
+
+    private final boolean jsonEnabled;
+    private final String jsonCommand;
+    private final String jsonSuggest;
+    private final String jsonLink;
+    private final List<String> jsonTooltip;
+    private final List<Replacement> jsonReplacements;
+
+    private final boolean mentionsEnabled;
+    private final String mentionsFormat;
+    private final String mentionsCommand;
+    private final String mentionsSuggest;
+    private final String mentionsLink;
+    private final List<String> mentionsTooltip;
+    private final Sound mentionsSound;
+
+    private final boolean jsonSwearsEnabled;
+    private final String jsonSwearsSuggest;
+    private final List<String> jsonSwearsTooltip;
+    private final String swearReplacement;
+
+    public ChattySettings(Configuration configuration, Logger logger) {
+        this.uuid = configuration.getNode("general.uuid").getAsBoolean(false);
+        this.log = configuration.getNode("general.log").getAsBoolean(false);
+        this.bungeeCord = configuration.getNode("general.bungeecord").getAsBoolean(false);
+        this.completelyCancel = configuration.getNode("general.completely-cancel").getAsBoolean(false);
+        this.keepOldRecipients = configuration.getNode("general.keep-old-recipients").getAsBoolean(true);
+
+        this.spyEnabled = configuration.getNode("spy.enable").getAsBoolean(false);
+        this.spyChatFormat = TextUtil.stylish(configuration.getNode("spy.format.chat").getAsString("&6[Spy] &r{format}"));
+
+        this.jsonEnabled = configuration.getNode("json.enable").getAsBoolean(false);
+        this.jsonCommand = configuration.getNode("json.command").getAsString(null);
+        this.jsonSuggest = configuration.getNode("json.suggest").getAsString(null);
+        this.jsonLink = configuration.getNode("json.link").getAsString(null);
+        this.jsonTooltip = colorize(configuration.getNode("json.tooltip"), COLORIZE);
+
+        ImmutableList.Builder<Replacement> replacements = ImmutableList.builder();
+        for (ConfigurationNode replacement : configuration.getNode("json.replacements").getChildNodes()) {
+            replacements.add(new Replacement(replacement));
+        }
+
+        this.jsonReplacements = replacements.build();
+
+        this.mentionsEnabled = configuration.getNode("json.mentions.enable").getAsBoolean(false);
+        this.mentionsFormat = configuration.getNode("json.mentions.format").getAsString("&e&l@{player}");
+        this.mentionsCommand = configuration.getNode("json.mentions.command").getAsString(null);
+        this.mentionsSuggest = configuration.getNode("json.mentions.suggest").getAsString(null);
+        this.mentionsLink = configuration.getNode("json.mentions.link").getAsString(null);
+        this.mentionsTooltip = colorize(configuration.getNode("json.mentions.tooltip"), COLORIZE);
+
+        String soundName = configuration.getNode("json.mentions.sound").getAsString(null);
+        Sound sound = null;
+        if (soundName != null) {
+            try {
+                sound = ru.mrbrikster.chatty.util.Sound.byName(soundName);
+            } catch (IllegalArgumentException e) {
+                logger.warning("Mention sound \"" + soundName + "\" not found");
+            }
+        }
+
+        this.mentionsSound = sound;
+
+        this.jsonSwearsEnabled = configuration.getNode("json.swears.enable").getAsBoolean(false);
+        this.jsonSwearsSuggest = configuration.getNode("json.swears.suggest").getAsString(null);
+        this.jsonSwearsTooltip = colorize(configuration.getNode("json.swears.tooltip"), TextUtil::stylish);
+        this.swearReplacement = configuration.getNode("moderation.swear.replacement").getAsString("<swear>");
+    }
+
+    private static List<String> colorize(ConfigurationNode node, Function<String, String> function) {
+        ImmutableList.Builder<String> builder = ImmutableList.builder();
+
+        for (String line : node.getAsStringList()) {
+            builder.add(function.apply(line));
+        }
+
+        return builder.build();
+    }
+
+    @Getter
+    public static final class Replacement {
+
+        private final String original;
+        private final String text;
+        private final String command;
+        private final String suggest;
+        private final String link;
+        private final List<String> tooltip;
+
+        private Replacement(ConfigurationNode replacement) {
+            this.original = replacement.getNode("original").getAsString(replacement.getName());
+            this.text = replacement.getNode("text").getAsString(original);
+            this.command = replacement.getNode("command").getAsString(null);
+            this.suggest = replacement.getNode("suggest").getAsString(null);
+            this.link = replacement.getNode("link").getAsString(null);
+            this.tooltip = colorize(replacement.getNode("tooltip"), COLORIZE);
+        }
+
+    }
+
+}
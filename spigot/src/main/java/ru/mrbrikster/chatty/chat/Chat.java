@@ -1,7 +1,5 @@
 package ru.mrbrikster.chatty.chat;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -17,11 +15,14 @@ import ru.mrbrikster.baseplugin.commands.BukkitCommand;
 import ru.mrbrikster.chatty.Chatty;
 import ru.mrbrikster.chatty.json.FormattedMessage;
 import ru.mrbrikster.chatty.reflection.Reflection;
+import ru.mrbrikster.chatty.storage.IgnoreIndex;
+import ru.mrbrikster.chatty.util.PermissionCache;
 import ru.mrbrikster.chatty.util.TextUtil;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -35,6 +36,7 @@ public class Chat implements ru.mrbrikster.chatty.api.chats.Chat {
     @NotNull private final String name;
     private final boolean enable;
     @NotNull private final String format;
+    @NotNull private final FormatTemplate formatTemplate;
     private final int range;
     @NotNull private final String symbol;
     private final boolean permissionRequired;
@@ -45,16 +47,44 @@ public class Chat implements ru.mrbrikster.chatty.api.chats.Chat {
 
     @Nullable private final Sound sound;
 
+    @NotNull private final PermissionCache.Node writePermission;
+    @NotNull private final PermissionCache.Node seePermission;
+    @NotNull private final PermissionCache.Node spyPermission;
+    @NotNull private final PermissionCache.Node cooldownPermission;
+
     private final boolean spyEnabled;
 
     private final boolean capsModerationEnabled;
     private final boolean swearModerationEnabled;
     private final boolean advertisementModerationEnabled;
 
+    /**
+     * The last messages replayed on join, or null if disabled
+     */
+    @Nullable private final ChatHistory history;
+
     @Setter private BukkitCommand bukkitCommand;
 
     public boolean isWriteAllowed(Player player) {
-        return !isPermissionRequired() || player.hasPermission(String.format("chatty.chat.%s.write", getName()));
+        return !isPermissionRequired() || Chatty.instance().getExact(PermissionCache.class).has(player, writePermission);
+    }
+
+    /**
+     * Checks if moderation method is enabled in this chat
+     * @param method moderation method name
+     * @return false if built-in method is disabled in chat settings
+     */
+    public boolean isModerationEnabled(String method) {
+        switch (method) {
+            case "caps":
+                return capsModerationEnabled;
+            case "swear":
+                return swearModerationEnabled;
+            case "advertisement":
+                return advertisementModerationEnabled;
+            default:
+                return true;
+        }
     }
 
     void setCooldown(Player player) {
@@ -80,44 +110,54 @@ public class Chat implements ru.mrbrikster.chatty.api.chats.Chat {
     @Override
     @NotNull
     public Collection<? extends Player> getRecipients(@Nullable Player player) {
+        if (player != null && range >= 0) {
+            Set<Player> nearbyPlayers = Chatty.instance().getExact(PlayerGrid.class).getNearbyPlayers(player, range);
+
+            if (nearbyPlayers != null) {
+                return filterRecipients(player, new ArrayList<>(nearbyPlayers), nearbyPlayers);
+            }
+        }
+
         return filterRecipients(player, new ArrayList<>(Reflection.getOnlinePlayers()));
     }
 
     @Override
     @NotNull
     public Collection<? extends Player> filterRecipients(@Nullable Player player, @NotNull Collection<? extends Player> players) {
-        if (range > -2) {
-            if (player == null) {
-                players.clear();
-                return players;
-            }
+        Set<Player> nearbyPlayers = player != null && range >= 0
+                ? Chatty.instance().getExact(PlayerGrid.class).getNearbyPlayers(player, range)
+                : null;
+
+        return filterRecipients(player, players, nearbyPlayers);
+    }
 
-            players.removeIf(onlinePlayer -> !onlinePlayer.getWorld().equals(player.getWorld()));
+    private Collection<? extends Player> filterRecipients(@Nullable Player player, @NotNull Collection<? extends Player> players,
+                                                          @Nullable Set<Player> nearbyPlayers) {
+        if (range > -2 && player == null) {
+            players.clear();
+            return players;
         }
 
         if (player != null) {
-            players.removeIf(recipient -> {
-                JsonElement jsonElement = Chatty.instance().getExact(JsonStorage.class)
-                        .getProperty(recipient, "ignore").orElseGet(JsonArray::new);
-
-                if (jsonElement.isJsonArray()) {
-                    for (JsonElement ignoreJsonElement : jsonElement.getAsJsonArray()) {
-                        if (player.getName().equalsIgnoreCase(ignoreJsonElement.getAsString())) {
-                            return true;
-                        }
-                    }
-                }
-
-                return false;
-            });
-            players.removeIf(recipient -> !Ranges.isApplicable(recipient, player, range));
+            if (nearbyPlayers != null) {
+                players.removeIf(recipient -> !nearbyPlayers.contains(recipient));
+            } else {
+                players.removeIf(recipient -> !Ranges.isApplicable(recipient, player, range));
+            }
+
+            Set<String> ignoredBy = Chatty.instance().getExact(IgnoreIndex.class).getIgnoredBy(player);
+
+            if (!ignoredBy.isEmpty()) {
+                players.removeIf(recipient -> ignoredBy.contains(recipient.getName().toLowerCase()));
+            }
         }
 
-        players.removeIf(recipient ->
-                !(recipient.equals(player)
-                        || !isPermissionRequired()
-                        || recipient.hasPermission("chatty.chat." + name + ".see"))
-        );
+        if (isPermissionRequired()) {
+            PermissionCache permissionCache = Chatty.instance().getExact(PermissionCache.class);
+            players.removeIf(recipient ->
+                    !(recipient.equals(player) || permissionCache.has(recipient, seePermission))
+            );
+        }
 
         return players;
     }
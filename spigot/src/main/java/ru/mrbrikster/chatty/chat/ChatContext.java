@@ -0,0 +1,45 @@
+package ru.mrbrikster.chatty.chat;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.bukkit.entity.Player;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * State of a single chat event, passed from the main handler to the MONITOR handler.
+ * Handlers of one event are called sequentially on the same thread,
+ * so the context itself does not need synchronization.
+ */
+@Getter
+@Setter
+class ChatContext {
+
+    private final Chat chat;
+
+    /**
+     * Message is ready to be sent by the MONITOR handler
+     */
+    private boolean pending;
+
+    /**
+     * Message was blocked by moderation and is shown only to its sender
+     */
+    private boolean blocked;
+
+    /**
+     * Recipients selected by the chat, they do not receive spy message
+     */
+    private Set<Player> spyRecipients;
+
+    /**
+     * Swears found in the message, used for JSON swears tooltips
+     */
+    private List<String> swears;
+
+    ChatContext(Chat chat) {
+        this.chat = chat;
+    }
+
+}
@@ -0,0 +1,133 @@
+package ru.mrbrikster.chatty.chat;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mrbrikster.chatty.api.chats.Chat.Ranges;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The last messages of a chat, already rendered, replayed to players on join.
+ *
+ * Messages are kept in a fixed-size ring, so memory of a chat is bounded by its capacity.
+ * Writers claim a slot with a single atomic increment and never block each other,
+ * readers skip slots overwritten while they are read.
+ */
+public class ChatHistory {
+
+    @Getter private final int capacity;
+    @Getter private final long maxAgeMillis;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of kept messages
+     * @param maxAgeMillis messages older than this are not replayed
+     */
+    public ChatHistory(int capacity, long maxAgeMillis) {
+        this.capacity = capacity;
+        this.maxAgeMillis = maxAgeMillis;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Adds delivered message, replacing the oldest one
+     * @param sender message sender, their location is used for range checks
+     * @param text legacy text, or null if the message is JSON
+     * @param json JSON message shown to players without "chatty.swears.see" permission
+     * @param swearsJson JSON message shown to players with "chatty.swears.see" permission,
+     *                   or null if it is the same as json
+     */
+    public void add(@NotNull Player sender, @Nullable String text, @Nullable String json, @Nullable String swearsJson) {
+        long index = sequence.getAndIncrement();
+        slots.set((int) (index % capacity),
+                new Entry(index, System.currentTimeMillis(), sender, text, json, swearsJson));
+    }
+
+    /**
+     * Returns kept messages which are not older than the maximum age
+     * @return messages, the oldest first
+     */
+    @NotNull
+    public List<Entry> getEntries() {
+        long end = sequence.get();
+        long minTime = System.currentTimeMillis() - maxAgeMillis;
+
+        List<Entry> entries = new ArrayList<>();
+        for (long index = Math.max(0, end - capacity); index < end; index++) {
+            Entry entry = slots.get((int) (index % capacity));
+
+            // Slot is not written yet, or already overwritten by a newer message
+            if (entry != null && entry.index == index && entry.timestamp >= minTime) {
+                entries.add(entry);
+            }
+        }
+
+        return entries;
+    }
+
+    @Getter
+    public static final class Entry {
+
+        @Getter(AccessLevel.NONE) private final long index;
+        private final long timestamp;
+        private final UUID senderUuid;
+        private final String senderName;
+        private final UUID world;
+        private final double x, y, z;
+        @Nullable private final String text;
+        @Nullable private final String json;
+        @Nullable private final String swearsJson;
+
+        private Entry(long index, long timestamp, Player sender, String text, String json, String swearsJson) {
+            Location location = sender.getLocation();
+
+            this.index = index;
+            this.timestamp = timestamp;
+            this.senderUuid = sender.getUniqueId();
+            this.senderName = sender.getName();
+            this.world = location.getWorld() == null ? null : location.getWorld().getUID();
+            this.x = location.getX();
+            this.y = location.getY();
+            this.z = location.getZ();
+            this.text = text;
+            this.json = json;
+            this.swearsJson = swearsJson;
+        }
+
+        /**
+         * Checks if player is in the chat range of the sender location
+         * @param player player to check
+         * @param range chat range
+         * @return whether range is applicable
+         */
+        public boolean isInRange(@NotNull Player player, int range) {
+            if (range == Ranges.CROSS_WORLD || range == Ranges.MULTI_SERVER) {
+                return true;
+            }
+
+            Location location = player.getLocation();
+            if (location.getWorld() == null || !location.getWorld().getUID().equals(world)) {
+                return false;
+            }
+
+            if (range == Ranges.SINGLE_WORLD) {
+                return true;
+            }
+
+            double dx = location.getX() - x, dy = location.getY() - y, dz = location.getZ() - z;
+            return range >= 0 && dx * dx + dy * dy + dz * dz <= (double) range * range;
+        }
+
+    }
+
+}
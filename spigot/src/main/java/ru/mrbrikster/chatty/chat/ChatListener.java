@@ -11,11 +11,11 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.plugin.EventExecutor;
 import org.jetbrains.annotations.NotNull;
-import ru.mrbrikster.baseplugin.config.Configuration;
-import ru.mrbrikster.baseplugin.config.ConfigurationNode;
 import ru.mrbrikster.chatty.Chatty;
+import ru.mrbrikster.chatty.ChattySettings;
 import ru.mrbrikster.chatty.api.events.ChattyMessageEvent;
 import ru.mrbrikster.chatty.bungee.BungeeBroadcaster;
 import ru.mrbrikster.chatty.dependencies.DependencyManager;
@@ -27,15 +27,18 @@ import ru.mrbrikster.chatty.json.JsonMessagePart;
 import ru.mrbrikster.chatty.json.LegacyMessagePart;
 import ru.mrbrikster.chatty.moderation.*;
 import ru.mrbrikster.chatty.reflection.Reflection;
+import ru.mrbrikster.chatty.storage.IgnoreIndex;
+import ru.mrbrikster.chatty.storage.StorageBackend;
 import ru.mrbrikster.chatty.util.Pair;
-import ru.mrbrikster.chatty.util.Sound;
+import ru.mrbrikster.chatty.util.PermissionCache;
 import ru.mrbrikster.chatty.util.TextUtil;
+import ru.mrbrikster.chatty.util.TimeUtil;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class ChatListener implements Listener, EventExecutor {
 
@@ -61,26 +64,34 @@ public class ChatListener implements Listener, EventExecutor {
 
     private final DependencyManager dependencyManager;
     private final ChatManager chatManager;
-    private final Configuration configuration;
-    private final ModerationManager moderationManager;
-    private final JsonStorage jsonStorage;
+    private final ModerationPipeline moderationPipeline;
+    private final MuteManager muteManager;
+    private final StorageBackend storage;
     private final PlayerTagManager playerTagManager;
+    private final PermissionCache permissionCache;
+    private final IgnoreIndex ignoreIndex;
 
-    private final Map<Player, Pair<Chat, List<Player>>> pendingSpyMessages;
-    private final Map<Player, List<String>> pendingSwears;
-    private final Map<Player, Chat> pendingMessages;
+    /**
+     * Style permission nodes of every chat, in the order of {@link #PATTERNS}:
+     * common node followed by the chat-specific one
+     */
+    private final Map<String, PermissionCache.Node[]> stylePermissions = new ConcurrentHashMap<>();
+
+    /**
+     * Contexts of events being processed, keyed by event identity.
+     * Every context is removed by the MONITOR handler of its event.
+     */
+    private final Map<AsyncPlayerChatEvent, ChatContext> contexts = new ConcurrentHashMap<>();
 
     public ChatListener(Chatty chatty) {
-        this.configuration = chatty.getExact(Configuration.class);
         this.chatManager = chatty.getExact(ChatManager.class);
         this.dependencyManager = chatty.getExact(DependencyManager.class);
-        this.moderationManager = chatty.getExact(ModerationManager.class);
-        this.jsonStorage = chatty.getExact(JsonStorage.class);
+        this.moderationPipeline = chatty.getExact(ModerationPipeline.class);
+        this.muteManager = chatty.getExact(MuteManager.class);
+        this.storage = chatty.getExact(StorageBackend.class);
         this.playerTagManager = chatty.getExact(PlayerTagManager.class);
-
-        this.pendingSpyMessages = new IdentityHashMap<>();
-        this.pendingSwears = new IdentityHashMap<>();
-        this.pendingMessages = new IdentityHashMap<>();
+        this.permissionCache = chatty.getExact(PermissionCache.class);
+        this.ignoreIndex = chatty.getExact(IgnoreIndex.class);
     }
 
     @Override
@@ -107,8 +118,12 @@ public class ChatListener implements Listener, EventExecutor {
             return;
         }
 
-        boolean json = configuration.getNode("json.enable").getAsBoolean(false);
+        if (isMuted(event, player, chat)) return;
 
+        ChatContext context = new ChatContext(chat);
+        contexts.put(event, context);
+
+        ChattySettings settings = Chatty.instance().settings();
         message = stylish(player, message, chat.getName());
 
         if (ChatColor.stripColor(message).isEmpty()) {
@@ -118,78 +133,85 @@ public class ChatListener implements Listener, EventExecutor {
 
         if (hasActiveCooldown(event, player, chat)) return;
 
-        if (chat.getMoney() > 0 && dependencyManager.getVault() != null) {
-            VaultHook vaultHook = dependencyManager.getVault();
-
-            if (!vaultHook.withdrawMoney(player, chat.getMoney())) {
-                player.sendMessage(Chatty.instance().messages().get("not-enough-money")
-                        .replace("{money}", String.valueOf(chat.getMoney())));
-                event.setCancelled(true);
-                return;
-            }
-        }
-
-        String format = chat.getFormat();
-
-        format = TextUtil.fixMultilineFormatting(format);
-
-        format = format.replace("{prefix}", playerTagManager.getPrefix(player));
-        format = format.replace("{suffix}", playerTagManager.getSuffix(player));
-
-        if (dependencyManager.getPlaceholderApi() != null) {
-            format = dependencyManager.getPlaceholderApi().setPlaceholders(player, format);
-        }
+        // Moderation goes before any formatting work, so blocked messages are cheap
+        StringBuilder logPrefixBuilder = new StringBuilder();
+        ModerationPipeline.Result moderation = checkModerationMethods(event, context, message, logPrefixBuilder);
+        message = moderation.getMessage();
+        context.setBlocked(moderation.isBlocked());
 
-        format = TextUtil.stylish(format);
+        if (!event.isCancelled()) {
+            if (chat.getMoney() > 0 && dependencyManager.getVault() != null) {
+                VaultHook vaultHook = dependencyManager.getVault();
 
-        format = format.replace("%", "%%");
-        format = format.replace("{player}", "%1$s");
-        format = format.replace("{message}", "%2$s");
+                if (!vaultHook.withdrawMoney(player, chat.getMoney())) {
+                    player.sendMessage(Chatty.instance().messages().get("not-enough-money")
+                            .replace("{money}", String.valueOf(chat.getMoney())));
+                    event.setCancelled(true);
+                    return;
+                }
+            }
 
-        event.setFormat(format);
+            event.setFormat(chat.getFormatTemplate().render(player, playerTagManager, dependencyManager.getPlaceholderApi()));
 
-        if (configuration.getNode("general.keep-old-recipients").getAsBoolean(true)) {
-            chat.filterRecipients(player, event.getRecipients());
-        } else {
-            event.getRecipients().clear();
-            event.getRecipients().addAll(chat.getRecipients(player));
-        }
+            if (moderation.isBlocked()) {
+                // Blocked message is shown only to its sender
+                event.getRecipients().clear();
+                event.getRecipients().add(player);
+            } else {
+                if (settings.isKeepOldRecipients()) {
+                    chat.filterRecipients(player, event.getRecipients());
+                } else {
+                    event.getRecipients().clear();
+                    event.getRecipients().addAll(chat.getRecipients(player));
+                }
 
-        if (event.getRecipients().size() <= 1) {
-            String noRecipients = Chatty.instance().messages().get("no-recipients", null);
+                if (event.getRecipients().size() <= 1) {
+                    String noRecipients = Chatty.instance().messages().get("no-recipients", null);
 
-            if (noRecipients != null && chat.getRange() > -3) {
-                Bukkit.getScheduler().runTaskLaterAsynchronously(Chatty.instance(), () -> player.sendMessage(noRecipients), 5L);
+                    if (noRecipients != null && chat.getRange() > -3) {
+                        Bukkit.getScheduler().runTaskLaterAsynchronously(Chatty.instance(), () -> player.sendMessage(noRecipients), 5L);
+                    }
+                }
             }
         }
 
-        StringBuilder logPrefixBuilder = new StringBuilder();
-        message = checkModerationMethods(event, player, chat, message, logPrefixBuilder);
-
         event.setMessage(message);
 
-        if (configuration.getNode("general.log").getAsBoolean(false)) {
-            this.chatManager.getLogger().write(player, message, logPrefixBuilder.toString());
+        if (settings.isLog()) {
+            this.chatManager.getLogger().write(player, chat, message, moderation.getMethods(), logPrefixBuilder.toString());
         }
 
         if (!event.isCancelled()) {
-            pendingMessages.put(player, chat);
+            context.setPending(true);
 
-            if (!json) {
-                if (configuration.getNode("general.bungeecord").getAsBoolean(false) && chat.getRange() <= -3) {
+            if (!settings.isJsonEnabled()) {
+                if (settings.isBungeeCord() && chat.getRange() <= -3) {
                     BungeeBroadcaster.broadcast(event.getPlayer(), chat.getName(), String.format(event.getFormat(), player.getName(), message), false);
                 }
             }
         }
 
-        pendingSpyMessages.put(player, Pair.of(chat, new ArrayList<>(event.getRecipients())));
+        context.setSpyRecipients(new HashSet<>(event.getRecipients()));
 
         ChattyMessageEvent chattyMessageEvent = new ChattyMessageEvent(player, chat, message);
         Bukkit.getPluginManager().callEvent(chattyMessageEvent);
     }
 
+    private boolean isMuted(AsyncPlayerChatEvent event, Player player, Chat chat) {
+        Optional<MuteManager.Mute> mute = muteManager.getMute(player, chat.getName());
+
+        if (!mute.isPresent()) {
+            return false;
+        }
+
+        player.sendMessage(Chatty.instance().messages().get("muted")
+                .replace("{duration}", TimeUtil.formatDuration(mute.get().getRemaining())));
+        event.setCancelled(true);
+        return true;
+    }
+
     private boolean hasActiveCooldown(AsyncPlayerChatEvent event, Player player, Chat chat) {
-        boolean bypassCooldown = chat.getCooldown() == -1 || player.hasPermission("chatty.cooldown." + chat.getName());
+        boolean bypassCooldown = chat.getCooldown() == -1 || permissionCache.has(player, chat.getCooldownPermission());
         long cooldown = bypassCooldown ? -1 : chat.getCooldown(player);
 
         if (cooldown != -1) {
@@ -206,102 +228,64 @@ public class ChatListener implements Listener, EventExecutor {
         return false;
     }
 
-    private String checkModerationMethods(AsyncPlayerChatEvent event, Player player, Chat chat, String message, StringBuilder logPrefixBuilder) {
-        if (chat.isSwearModerationEnabled() && moderationManager.isSwearModerationEnabled()) {
-            SwearModerationMethod swearMethod = moderationManager.getSwearMethod(message);
-            if (!player.hasPermission("chatty.moderation.swear")) {
-                message = handleModerationMethod(event, player, message, logPrefixBuilder, swearMethod);
+    private ModerationPipeline.Result checkModerationMethods(AsyncPlayerChatEvent event, ChatContext context,
+                                                             String message, StringBuilder logPrefixBuilder) {
+        Player player = event.getPlayer();
+        Chat chat = context.getChat();
 
-                if (configuration.getNode("json.enable").getAsBoolean(false)
-                        && configuration.getNode("json.swears.enable").getAsBoolean(false)) {
-                    pendingSwears.put(player, swearMethod.getWords());
-                }
-            }
-        }
+        ModerationPipeline.Result result = moderationPipeline.moderate(player, message, chat::isModerationEnabled);
 
-        if (chat.isCapsModerationEnabled() && this.moderationManager.isCapsModerationEnabled()) {
-            CapsModerationMethod capsMethod = this.moderationManager.getCapsMethod(message);
-            if (!player.hasPermission("chatty.moderation.caps")) {
-                message = handleModerationMethod(event, player, message, logPrefixBuilder, capsMethod);
-            }
+        ChattySettings settings = Chatty.instance().settings();
+        if (settings.isJsonEnabled() && settings.isJsonSwearsEnabled()) {
+            result.getMethod(SwearModerationMethod.class)
+                    .ifPresent(swearMethod -> context.setSwears(swearMethod.getWords()));
         }
 
-        if (chat.isAdvertisementModerationEnabled() && this.moderationManager.isAdvertisementModerationEnabled()) {
-            AdvertisementModerationMethod advertisementMethod = this.moderationManager.getAdvertisementMethod(message);
-            if (!player.hasPermission("chatty.moderation.advertisement")) {
-                message = handleModerationMethod(event, player, message, logPrefixBuilder, advertisementMethod);
-            }
-        }
-        return message;
-    }
-
-    private String handleModerationMethod(AsyncPlayerChatEvent event, Player player, String message,
-                                          StringBuilder logPrefixBuilder, ModerationMethod method) {
-        if (method.isBlocked()) {
-            message = method.getEditedMessage();
-            if (method.isUseBlock()) {
-                if (configuration.getNode("general.completely-cancel").getAsBoolean(false))
-                    event.setCancelled(true);
-                else {
-                    event.getRecipients().clear();
-                    event.getRecipients().add(player);
-                }
-
-                logPrefixBuilder.append("[").append(method.getLogPrefix()).append("] ");
+        result.getBlockingMethod().ifPresent(method -> {
+            if (settings.isCompletelyCancel()) {
+                event.setCancelled(true);
             }
 
-            String warningMessage = Chatty.instance().messages().get(method.getWarningMessageKey(), null);
-
-            if (warningMessage != null)
-                Bukkit.getScheduler().runTaskLaterAsynchronously(Chatty.instance(), () -> player.sendMessage(warningMessage), 5L);
-        }
+            logPrefixBuilder.append("[").append(method.getLogPrefix()).append("] ");
+        });
 
-        return message;
-    }
-
-    @EventHandler(priority = EventPriority.MONITOR)
-    public void onSpyMessage(AsyncPlayerChatEvent event) {
-        Pair<Chat, List<Player>> pair = pendingSpyMessages.remove(event.getPlayer());
-
-        if (pair.getA().isSpyEnabled()
-                && configuration.getNode("spy.enable").getAsBoolean(false)
-                && !event.isCancelled()) {
-            String spyInfo = TextUtil.stylish(configuration.getNode("spy.format.chat")
-                    .getAsString("&6[Spy] &r{format}")
-                    .replace("{format}", String.format(
-                            event.getFormat(),
-                            event.getPlayer().getName(),
-                            event.getMessage())));
-
-            Reflection.getOnlinePlayers().stream().
-                    filter(spy ->
-                            (spy.hasPermission("chatty.spy." + pair.getA().getName()))
-                                    && jsonStorage.getProperty(spy, "spy-mode").orElse(new JsonPrimitive(true)).getAsBoolean()
-                                    && !pair.getB().contains(spy))
-                    .forEach(spy -> spy.sendMessage(spyInfo));
-        }
+        return result;
     }
 
     /**
      * Method handles AsyncPlayerChatEvent with MONITOR priority
-     * It let the other plugins handle the event then cancel it
+     * It let the other plugins handle the event then sends spy and JSON messages
+     * The event context is always removed here, even if the event was cancelled
      * @param event AsyncPlayerChatEvent object
      */
-    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    @EventHandler(priority = EventPriority.MONITOR)
     public void onChatMonitor(AsyncPlayerChatEvent event) {
-        Chat chat = pendingMessages.remove(event.getPlayer());
+        ChatContext context = contexts.remove(event);
 
-        if (chat == null) {
+        if (context == null || event.isCancelled()) {
+            return;
+        }
+
+        ChattySettings settings = Chatty.instance().settings();
+        sendSpyMessage(event, context, settings);
+
+        if (!context.isPending()) {
             // Seems to event was uncancelled by another plugin
             return;
         }
 
-        if (configuration.getNode("json.enable").getAsBoolean(false)) {
-            performJsonMessage(event, chat);
+        Chat chat = context.getChat();
+
+        if (settings.isJsonEnabled()) {
+            performJsonMessage(event, context, settings);
         } else {
             String format = String.format(event.getFormat(), event.getPlayer().getName(), event.getMessage());
             String strippedHexFormat = TextUtil.stripHex(format);
 
+            if (chat.getHistory() != null && !context.isBlocked()) {
+                chat.getHistory().add(event.getPlayer(), format, null, null);
+            }
+
             if (!strippedHexFormat.equals(format)) {
                 event.getRecipients().forEach(player -> player.sendMessage(format));
                 event.getRecipients().clear();
@@ -318,24 +302,84 @@ public class ChatListener implements Listener, EventExecutor {
         }
     }
 
-    private void performJsonMessage(AsyncPlayerChatEvent event, Chat chat) {
+    /**
+     * Replays the last messages of chats which player can see.
+     * Messages are sent as they were rendered, without formatting them again.
+     * @param event PlayerJoinEvent object
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        Set<String> ignored = ignoreIndex.getIgnored(player);
+
+        List<ChatHistory.Entry> entries = new ArrayList<>();
+        for (Chat chat : chatManager.getChats()) {
+            ChatHistory history = chat.getHistory();
+
+            if (history == null || chat.isPermissionRequired() && !permissionCache.has(player, chat.getSeePermission())) {
+                continue;
+            }
+
+            for (ChatHistory.Entry entry : history.getEntries()) {
+                if (!ignored.contains(entry.getSenderName().toLowerCase()) && entry.isInRange(player, chat.getRange())) {
+                    entries.add(entry);
+                }
+            }
+        }
+
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        // Messages of different chats are merged in the order they were sent
+        entries.sort(Comparator.comparingLong(ChatHistory.Entry::getTimestamp));
+
+        boolean seeSwears = permissionCache.has(player, "chatty.swears.see");
+        for (ChatHistory.Entry entry : entries) {
+            if (entry.getJson() == null) {
+                player.sendMessage(entry.getText());
+            } else {
+                TextUtil.sendJson(player, seeSwears && entry.getSwearsJson() != null ? entry.getSwearsJson() : entry.getJson());
+            }
+        }
+    }
+
+    private void sendSpyMessage(AsyncPlayerChatEvent event, ChatContext context, ChattySettings settings) {
+        Chat chat = context.getChat();
+        Set<Player> recipients = context.getSpyRecipients();
+
+        if (recipients == null || !chat.isSpyEnabled() || !settings.isSpyEnabled()) {
+            return;
+        }
+
+        String spyInfo = settings.getSpyChatFormat()
+                .replace("{format}", String.format(
+                        event.getFormat(),
+                        event.getPlayer().getName(),
+                        event.getMessage()));
+
+        Reflection.getOnlinePlayers().stream().
+                filter(spy ->
+                        permissionCache.has(spy, chat.getSpyPermission())
+                                && storage.getProperty(spy, "spy-mode").orElse(new JsonPrimitive(true)).getAsBoolean()
+                                && !recipients.contains(spy))
+                .forEach(spy -> spy.sendMessage(spyInfo));
+    }
+
+    private void performJsonMessage(AsyncPlayerChatEvent event, ChatContext context, ChattySettings settings) {
         Player player = event.getPlayer();
+        Chat chat = context.getChat();
         String format = unstylish(String.format(event.getFormat(), "{player}", "{message}"));
 
         PlaceholderAPIHook placeholderAPI = dependencyManager.getPlaceholderApi();
-        List<String> tooltip = configuration.getNode("json.tooltip").getAsStringList()
-                .stream().map(line -> ChatColor.translateAlternateColorCodes('&',
-                        line.replace("{player}", player.getName())
-                                .replace("{prefix}", playerTagManager.getPrefix(player))
-                                .replace("{suffix}", playerTagManager.getSuffix(player))
-                )).collect(Collectors.toList());
+        List<String> tooltip = formatTooltip(settings.getJsonTooltip(), player, player.getName());
 
         if (placeholderAPI != null)
             tooltip = placeholderAPI.setPlaceholders(player, tooltip);
 
-        String command = configuration.getNode("json.command").getAsString(null);
-        String suggestCommand = configuration.getNode("json.suggest").getAsString(null);
-        String link = configuration.getNode("json.link").getAsString(null);
+        String command = settings.getJsonCommand();
+        String suggestCommand = settings.getJsonSuggest();
+        String link = settings.getJsonLink();
 
         Function<String, String> stringVariablesFunction = createVariablesFunction(player);
 
@@ -347,25 +391,34 @@ public class ChatListener implements Listener, EventExecutor {
                         .link(stringVariablesFunction.apply(link))
                         .tooltip(tooltip));
 
-        configuration.getNode("json.replacements").getChildNodes().forEach(replacement ->
+        settings.getJsonReplacements().forEach(replacement ->
                 applyReplacement(player, placeholderAPI, formattedMessage, replacement));
 
-        if (configuration.getNode("json.mentions.enable").getAsBoolean(false) && player.hasPermission("chatty.mentions")) {
-            applyMentions(event, placeholderAPI, formattedMessage);
+        if (settings.isMentionsEnabled() && permissionCache.has(player, "chatty.mentions")) {
+            applyMentions(event, placeholderAPI, formattedMessage, settings);
         } else {
             formattedMessage.replace("{message}", new LegacyMessagePart(event.getMessage(), false));
         }
 
-        if (configuration.getNode("general.bungeecord").getAsBoolean(false)) {
+        if (settings.isBungeeCord()) {
             BungeeBroadcaster.broadcast(event.getPlayer(), chat.getName(), formattedMessage.toJSONString(), true);
         }
 
-        if (configuration.getNode("json.swears.enable").getAsBoolean(false)) {
-            applyJsonSwears(event, formattedMessage);
+        ChatHistory history = context.isBlocked() ? null : chat.getHistory();
+        String json = history != null ? formattedMessage.toJSONString() : null;
+
+        if (settings.isJsonSwearsEnabled()) {
+            applyJsonSwears(event, context.getSwears(), formattedMessage, settings);
         } else {
             formattedMessage.send(event.getRecipients());
         }
 
+        if (history != null) {
+            // Swears tooltips are added to the message after it is sent to players who cannot see swears
+            history.add(player, null, json, settings.isJsonSwearsEnabled() && context.getSwears() != null
+                    ? formattedMessage.toJSONString() : null);
+        }
+
         event.setFormat(formattedMessage.toReadableText().replace("%", "%%"));
         event.getRecipients().clear();
 
@@ -377,9 +430,9 @@ public class ChatListener implements Listener, EventExecutor {
         }
     }
 
-    private void applyJsonSwears(AsyncPlayerChatEvent event, FormattedMessage formattedMessage) {
-        String replacement = configuration.getNode("moderation.swear.replacement").getAsString("<swear>");
-        List<String> swears = pendingSwears.remove(event.getPlayer());
+    private void applyJsonSwears(AsyncPlayerChatEvent event, List<String> swears,
+                                 FormattedMessage formattedMessage, ChattySettings settings) {
+        String replacement = settings.getSwearReplacement();
 
         if (swears == null) {
             formattedMessage.send(event.getRecipients());
@@ -388,7 +441,7 @@ public class ChatListener implements Listener, EventExecutor {
             List<Player> cannotSeeSwears = new ArrayList<>();
 
             event.getRecipients().forEach(recipient -> {
-                if (recipient.hasPermission("chatty.swears.see")) {
+                if (permissionCache.has(recipient, "chatty.swears.see")) {
                     canSeeSwears.add(recipient);
                 } else {
                     cannotSeeSwears.add(recipient);
@@ -397,22 +450,26 @@ public class ChatListener implements Listener, EventExecutor {
 
             formattedMessage.send(cannotSeeSwears);
 
-            List<String> swearTooltip = configuration.getNode("json.swears.tooltip").getAsStringList()
-                    .stream().map(TextUtil::stylish).collect(Collectors.toList());
+            List<String> swearTooltip = settings.getJsonSwearsTooltip();
+            String suggest = settings.getJsonSwearsSuggest();
 
-            String suggest = configuration.getNode("json.swears.suggest").getAsString(null);
+            swears.forEach(swear -> {
+                List<String> tooltip = new ArrayList<>(swearTooltip.size());
+                for (String tooltipLine : swearTooltip) {
+                    tooltip.add(tooltipLine.replace("{word}", swear));
+                }
 
-            swears.forEach(swear -> formattedMessage.replace(replacement,
-                    new JsonMessagePart(replacement)
-                            .tooltip(swearTooltip.stream().map(tooltipLine -> tooltipLine.replace("{word}", swear))
-                                    .collect(Collectors.toList()))
-                            .suggest(suggest != null ? suggest.replace("{word}", swear) : null)));
+                formattedMessage.replace(replacement, new JsonMessagePart(replacement)
+                        .tooltip(tooltip)
+                        .suggest(suggest != null ? suggest.replace("{word}", swear) : null));
+            });
 
             formattedMessage.send(canSeeSwears);
         }
     }
 
-    private void applyMentions(AsyncPlayerChatEvent event, PlaceholderAPIHook placeholderAPI, FormattedMessage formattedMessage) {
+    private void applyMentions(AsyncPlayerChatEvent event, PlaceholderAPIHook placeholderAPI,
+                               FormattedMessage formattedMessage, ChattySettings settings) {
         String link;
         String suggestCommand;
         String command;
@@ -431,34 +488,27 @@ public class ChatListener implements Listener, EventExecutor {
 
                 Function<String, String> mentionedPlayerVariablesFunc = createVariablesFunction(mentionedPlayer);
 
-                List<String> mentionTooltip = configuration.getNode("json.mentions.tooltip").getAsStringList();
-                mentionTooltip = mentionTooltip.stream().map(line ->
-                        ChatColor.translateAlternateColorCodes('&',
-                                line.replace("{player}", mentionedPlayer.getDisplayName())
-                                        .replace("{prefix}", playerTagManager.getPrefix(mentionedPlayer))
-                                        .replace("{suffix}", playerTagManager.getSuffix(mentionedPlayer))
-                        )).collect(Collectors.toList());
+                List<String> mentionTooltip = formatTooltip(settings.getMentionsTooltip(),
+                        mentionedPlayer, mentionedPlayer.getDisplayName());
 
                 if (placeholderAPI != null) {
                     mentionTooltip = placeholderAPI.setPlaceholders(mentionedPlayer, mentionTooltip);
                 }
 
-                link = mentionedPlayerVariablesFunc.apply(configuration.getNode("json.mentions.link").getAsString(null));
-                suggestCommand = mentionedPlayerVariablesFunc.apply(configuration.getNode("json.mentions.suggest").getAsString(null));
-                command = mentionedPlayerVariablesFunc.apply(configuration.getNode("json.mentions.command").getAsString(null));
+                link = mentionedPlayerVariablesFunc.apply(settings.getMentionsLink());
+                suggestCommand = mentionedPlayerVariablesFunc.apply(settings.getMentionsSuggest());
+                command = mentionedPlayerVariablesFunc.apply(settings.getMentionsCommand());
 
                 playerName = mentionedPlayer.getDisplayName();
 
                 messageWithMention.replace(group,
-                        new JsonMessagePart(applyPlaceholders(mentionedPlayer, configuration.getNode("json.mentions.format")
-                                .getAsString("&e&l@{player}").replace("{player}", playerName)))
+                        new JsonMessagePart(applyPlaceholders(mentionedPlayer,
+                                settings.getMentionsFormat().replace("{player}", playerName)))
                                 .tooltip(mentionTooltip).command(command).suggest(suggestCommand).link(link),
                         new LegacyMessagePart(TextUtil.getLastColors(event.getFormat())));
 
-                String soundName = configuration.getNode("json.mentions.sound").getAsString(null);
-                if (soundName != null) {
-                    org.bukkit.Sound sound = Sound.byName(soundName);
-                    mentionedPlayer.playSound(mentionedPlayer.getLocation(), sound, 1L, 1L);
+                if (settings.getMentionsSound() != null) {
+                    mentionedPlayer.playSound(mentionedPlayer.getLocation(), settings.getMentionsSound(), 1L, 1L);
                 }
 
                 event.getRecipients().add(mentionedPlayer);
@@ -468,38 +518,46 @@ public class ChatListener implements Listener, EventExecutor {
         formattedMessage.replace("{message}", messageWithMention);
     }
 
-    private void applyReplacement(Player player, PlaceholderAPIHook placeholderAPI, FormattedMessage formattedMessage, ConfigurationNode replacement) {
+    private void applyReplacement(Player player, PlaceholderAPIHook placeholderAPI, FormattedMessage formattedMessage,
+                                  ChattySettings.Replacement replacement) {
         Function<String, String> stringVariablesFunction = createVariablesFunction(player);
-        String replacementName = replacement.getNode("original").getAsString(replacement.getName());
-
-        String text = replacement.getNode("text").getAsString(replacementName);
-        List<String> replacementTooltip = replacement.getNode("tooltip").getAsStringList();
-
-        replacementTooltip = replacementTooltip.stream().map(line ->
-                ChatColor.translateAlternateColorCodes('&',
-                        line.replace("{player}", player.getDisplayName())
-                                .replace("{prefix}", playerTagManager.getPrefix(player))
-                                .replace("{suffix}", playerTagManager.getSuffix(player))
-                )).collect(Collectors.toList());
+        List<String> replacementTooltip = formatTooltip(replacement.getTooltip(), player, player.getDisplayName());
 
         if (placeholderAPI != null)
             replacementTooltip = placeholderAPI.setPlaceholders(player, replacementTooltip);
 
-        String replacementCommand = replacement.getNode("command").getAsString(null);
-        String replacementSuggestCommand = replacement.getNode("suggest").getAsString(null);
-        String replacementLink = replacement.getNode("link").getAsString(null);
-
-        formattedMessage.replace(replacementName, new JsonMessagePart(stringVariablesFunction.apply(text))
-                .command(stringVariablesFunction.apply(replacementCommand))
-                .suggest(stringVariablesFunction.apply(replacementSuggestCommand))
-                .link(stringVariablesFunction.apply(replacementLink))
+        formattedMessage.replace(replacement.getOriginal(), new JsonMessagePart(stringVariablesFunction.apply(replacement.getText()))
+                .command(stringVariablesFunction.apply(replacement.getCommand()))
+                .suggest(stringVariablesFunction.apply(replacement.getSuggest()))
+                .link(stringVariablesFunction.apply(replacement.getLink()))
                 .tooltip(replacementTooltip));
     }
 
+    /**
+     * Replaces player variables in tooltip lines that are already colorized
+     */
+    private List<String> formatTooltip(List<String> tooltip, Player player, String playerName) {
+        if (tooltip.isEmpty()) {
+            return tooltip;
+        }
+
+        String prefix = ChatColor.translateAlternateColorCodes('&', playerTagManager.getPrefix(player));
+        String suffix = ChatColor.translateAlternateColorCodes('&', playerTagManager.getSuffix(player));
+
+        List<String> lines = new ArrayList<>(tooltip.size());
+        for (String line : tooltip) {
+            lines.add(line.replace("{player}", playerName)
+                    .replace("{prefix}", prefix)
+                    .replace("{suffix}", suffix));
+        }
+
+        return lines;
+    }
+
     private Pair<Chat, String> getChat(final Player player, String message) {
         Chat currentChat = null;
 
-        Optional<JsonElement> optional = jsonStorage.getProperty(player, "chat");
+        Optional<JsonElement> optional = storage.getProperty(player, "chat");
         if (optional.isPresent()) {
             JsonElement jsonElement = optional.get();
             if (jsonElement.isJsonPrimitive()) {
@@ -534,10 +592,25 @@ public class ChatListener implements Listener, EventExecutor {
     }
 
     private String stylish(Player player, String message, String chat) {
-        for (Map.Entry<String, Pattern> entry : PATTERNS.entrySet()) {
-            if (player.hasPermission(entry.getKey()) || player.hasPermission(entry.getKey() + "." + chat)) {
-                message = entry.getValue().matcher(message).replaceAll("\u00A7$1");
+        PermissionCache.Node[] chatPermissions = stylePermissions.computeIfAbsent(chat, key -> {
+            PermissionCache.Node[] nodes = new PermissionCache.Node[PATTERNS.size() * 2];
+
+            int i = 0;
+            for (String permission : PATTERNS.keySet()) {
+                nodes[i++] = permissionCache.node(permission);
+                nodes[i++] = permissionCache.node(permission + "." + key);
             }
+
+            return nodes;
+        });
+
+        int i = 0;
+        for (Pattern pattern : PATTERNS.values()) {
+            if (permissionCache.has(player, chatPermissions[i]) || permissionCache.has(player, chatPermissions[i + 1])) {
+                message = pattern.matcher(message).replaceAll("\u00A7$1");
+            }
+
+            i += 2;
         }
 
         return message;
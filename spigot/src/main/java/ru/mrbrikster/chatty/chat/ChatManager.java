@@ -3,6 +3,7 @@ package ru.mrbrikster.chatty.chat;
 import com.google.gson.JsonPrimitive;
 import lombok.Getter;
 import net.amoebaman.util.ArrayWrapper;
+import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import ru.mrbrikster.baseplugin.commands.BukkitCommand;
@@ -10,29 +11,38 @@ import ru.mrbrikster.baseplugin.config.Configuration;
 import ru.mrbrikster.baseplugin.config.ConfigurationNode;
 import ru.mrbrikster.chatty.Chatty;
 import ru.mrbrikster.chatty.chat.Chat.ChatBuilder;
+import ru.mrbrikster.chatty.logging.ChatLogEntry;
+import ru.mrbrikster.chatty.logging.ChatLogWriter;
+import ru.mrbrikster.chatty.logging.HistoryStore;
+import ru.mrbrikster.chatty.logging.LogArchiver;
+import ru.mrbrikster.chatty.moderation.ModerationMethod;
+import ru.mrbrikster.chatty.storage.StorageBackend;
+import ru.mrbrikster.chatty.util.PermissionCache;
 import ru.mrbrikster.chatty.util.Sound;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 public class ChatManager {
 
     @Getter private final List<Chat> chats = new ArrayList<>();
     @Getter private final Logger logger;
     private final Configuration configuration;
-    private final JsonStorage jsonStorage;
+    private final StorageBackend storage;
+    private final PermissionCache permissionCache;
+
+    // Histories of chats by names, kept on reload
+    private Map<String, ChatHistory> histories = new HashMap<>();
 
     public ChatManager(Chatty chatty) {
         this.configuration = chatty.getExact(Configuration.class);
-        this.jsonStorage = chatty.getExact(JsonStorage.class);
-        this.logger = new Logger();
+        this.storage = chatty.getExact(StorageBackend.class);
+        this.permissionCache = chatty.getExact(PermissionCache.class);
+        this.logger = new Logger(chatty, configuration);
 
         init();
 
@@ -50,16 +60,27 @@ public class ChatManager {
     }
 
     private void init() {
+        Map<String, ChatHistory> histories = new HashMap<>();
+
         configuration.getNode("chats").getChildNodes().stream().map(chatNode -> {
+                    String format = chatNode.getNode("format").getAsString("§7{player}§8: §f{message}");
+
+                    String name = chatNode.getName();
+
                     ChatBuilder builder = Chat.builder()
-                            .name(chatNode.getName())
+                            .name(name)
                             .enable(chatNode.getNode("enable").getAsBoolean(false))
-                            .format(chatNode.getNode("format").getAsString("§7{player}§8: §f{message}"))
+                            .format(format)
+                            .formatTemplate(FormatTemplate.compile(format))
                             .range(chatNode.getNode("range").getAsInt(-1))
                             .symbol(chatNode.getNode("symbol").getAsString(""))
                             .permissionRequired(chatNode.getNode("permission").getAsBoolean(true))
                             .cooldown(chatNode.getNode("cooldown").getAsLong(-1))
-                            .money(chatNode.getNode("money").getAsInt(0));
+                            .money(chatNode.getNode("money").getAsInt(0))
+                            .writePermission(permissionCache.node("chatty.chat." + name + ".write"))
+                            .seePermission(permissionCache.node("chatty.chat." + name + ".see"))
+                            .spyPermission(permissionCache.node("chatty.spy." + name))
+                            .cooldownPermission(permissionCache.node("chatty.cooldown." + name));
 
                     String chatCommand = chatNode.getNode("command").getAsString(null);
                     if (chatCommand != null) {
@@ -80,9 +101,26 @@ public class ChatManager {
 
                     builder.spyEnabled(chatNode.getNode("spy").getAsBoolean(true));
 
+                    ConfigurationNode historyNode = chatNode.getNode("history");
+                    int historySize = historyNode.getNode("size").getAsInt(0);
+
+                    if (historySize > 0) {
+                        long maxAgeMillis = historyNode.getNode("max-age").getAsLong(600) * 1000;
+                        ChatHistory history = this.histories.get(name);
+
+                        if (history == null || history.getCapacity() != historySize || history.getMaxAgeMillis() != maxAgeMillis) {
+                            history = new ChatHistory(historySize, maxAgeMillis);
+                        }
+
+                        histories.put(name, history);
+                        builder.history(history);
+                    }
+
                     return builder.build();
                 }).filter(Chat::isEnable).forEach(this.chats::add);
 
+        this.histories = histories;
+
         for (Chat chat : this.chats) {
             if (chat.getCommand() != null) {
                 chat.setBukkitCommand(new BukkitCommand(chat.getCommand(), ArrayWrapper.toArray(chat.getAliases(), String.class)) {
@@ -96,7 +134,7 @@ public class ChatManager {
                             }
 
                             if (chat.isWriteAllowed((Player) sender)) {
-                                jsonStorage.setProperty((Player) sender, "chat", new JsonPrimitive(chat.getName()));
+                                storage.setProperty((Player) sender, "chat", new JsonPrimitive(chat.getName()));
                                 sender.sendMessage(Chatty.instance().messages().get("chat-command.chat-switched").replace("{chat}", chat.getName()));
                             } else {
                                 sender.sendMessage(Chatty.instance().messages().get("chat-command.no-chat-permission"));
@@ -126,36 +164,64 @@ public class ChatManager {
 
     public static class Logger {
 
-        void write(Player player, String message, String additionalPrefix) {
-            BufferedWriter bufferedWriter = null;
-            File logsDirectory = new File(Chatty.instance().getDataFolder().getAbsolutePath() + File.separator + "logs");
+        private final ChatLogWriter writer;
+        private final HistoryStore historyStore;
+
+        private Logger(Chatty chatty, Configuration configuration) {
+            ChatLogWriter.OverflowPolicy overflowPolicy;
+            try {
+                overflowPolicy = ChatLogWriter.OverflowPolicy.valueOf(configuration.getNode("general.logging.overflow")
+                        .getAsString("drop").toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException e) {
+                overflowPolicy = ChatLogWriter.OverflowPolicy.DROP;
+            }
+
+            File directory = new File(chatty.getDataFolder(), "logs");
 
-            if (!logsDirectory.exists() && !logsDirectory.mkdir()) {
-                return;
+            if (configuration.getNode("general.logging.history.enable").getAsBoolean(false)) {
+                this.historyStore = new HistoryStore(new File(chatty.getDataFolder(), "history"), chatty.getLogger(),
+                        configuration.getNode("general.logging.history.max-age").getAsInt(0));
+            } else {
+                this.historyStore = null;
             }
 
-            DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
-            Calendar calendar = Calendar.getInstance();
-            String fileName = String.format("%s.log", dateFormat.format(calendar.getTime()));
+            this.writer = new ChatLogWriter(directory, chatty.getLogger(),
+                    Math.max(1, configuration.getNode("general.logging.queue-size").getAsInt(8192)),
+                    Math.max(1, configuration.getNode("general.logging.flush-interval").getAsLong(1000)),
+                    overflowPolicy, historyStore);
 
-            dateFormat = new SimpleDateFormat("[HH:mm:ss] ");
-            String prefix = dateFormat.format(calendar.getTime());
-            String line = String.format("%1$s%2$s%3$s (%4$s): %5$s",
-                    prefix, additionalPrefix, player.getName(), player.getUniqueId().toString(), message);
+            LogArchiver archiver = new LogArchiver(directory, chatty.getLogger(),
+                    configuration.getNode("general.logging.archive.compress").getAsBoolean(true),
+                    configuration.getNode("general.logging.archive.max-age").getAsInt(0),
+                    configuration.getNode("general.logging.archive.max-size").getAsLong(0) * 1024 * 1024);
 
-            try {
-                bufferedWriter = new BufferedWriter(new FileWriter(logsDirectory + File.separator + fileName, true));
-                bufferedWriter.write(line);
-                bufferedWriter.newLine();
-            } catch (IOException ignored) {
-            } finally {
-                try {
-                    if (bufferedWriter != null) {
-                        bufferedWriter.flush();
-                        bufferedWriter.close();
-                    }
-                } catch (Exception ignored) {}
+            // A minute after start, then every hour
+            Bukkit.getScheduler().runTaskTimerAsynchronously(chatty, archiver, 20L * 60, 20L * 60 * 60);
+        }
+
+        void write(Player player, Chat chat, String message, List<ModerationMethod> methods, String additionalPrefix) {
+            int flags = 0;
+            for (ModerationMethod method : methods) {
+                flags |= HistoryStore.flag(method.getLogPrefix());
             }
+
+            writer.write(new ChatLogEntry(System.currentTimeMillis(), chat.getName(), flags, additionalPrefix,
+                    player.getName(), player.getUniqueId(), message));
+        }
+
+        /**
+         * Returns searchable chat history
+         * @return history, or empty if it is disabled in configuration
+         */
+        public Optional<HistoryStore> getHistoryStore() {
+            return Optional.ofNullable(historyStore);
+        }
+
+        /**
+         * Writes queued messages and closes log file
+         */
+        public void close() {
+            writer.close();
         }
 
     }
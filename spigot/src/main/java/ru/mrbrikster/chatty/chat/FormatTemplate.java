@@ -0,0 +1,246 @@
+package ru.mrbrikster.chatty.chat;
+
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mrbrikster.chatty.dependencies.PlaceholderAPIHook;
+import ru.mrbrikster.chatty.dependencies.PlayerTagManager;
+import ru.mrbrikster.chatty.util.TextUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Chat format compiled into literal segments and variable slots.
+ * Literal segments are stylished and escaped once, so rendering
+ * a format for the message is a single pass without regular expressions.
+ *
+ * Gradient which contains prefix, suffix or PlaceholderAPI variable is applied to the substituted values,
+ * so such formats are not compiled and are stylished as a whole on every render.
+ */
+public final class FormatTemplate {
+
+    private static final Pattern GRADIENT_START_PATTERN = Pattern.compile("\\{#[a-fA-F0-9]{6}(:#[a-fA-F0-9]{6})+ ");
+
+    private final Segment[] segments;
+    private final int length;
+
+    // Format with a gradient spanning a variable, or null if the format is compiled
+    @Nullable private final String format;
+
+    private FormatTemplate(Segment[] segments, int length) {
+        this.segments = segments;
+        this.length = length;
+        this.format = null;
+    }
+
+    private FormatTemplate(String format) {
+        this.segments = null;
+        this.length = format.length();
+        this.format = format;
+    }
+
+    /**
+     * Compiles chat format
+     * @param format format with {prefix}, {suffix}, {player}, {message} and PlaceholderAPI variables
+     * @return compiled template
+     */
+    public static FormatTemplate compile(@NotNull String format) {
+        format = TextUtil.fixMultilineFormatting(format);
+
+        List<Segment> segments = new ArrayList<>();
+        Matcher matcher = PlaceholderAPIHook.PLACEHOLDER_PATTERN.matcher(format);
+        Matcher gradientMatcher = GRADIENT_START_PATTERN.matcher(format);
+        boolean inGradient = false;
+        int literalStart = 0;
+        int position = 0;
+
+        while (position < format.length()) {
+            SegmentType type = null;
+            int end = -1;
+
+            char c = format.charAt(position);
+            if (c == '{') {
+                for (SegmentType variable : SegmentType.VARIABLES) {
+                    if (format.startsWith(variable.variable, position)) {
+                        type = variable;
+                        end = position + variable.variable.length();
+                        break;
+                    }
+                }
+            } else if (c == '%' && matcher.region(position, format.length()).lookingAt()) {
+                type = SegmentType.PLACEHOLDER;
+                end = matcher.end();
+            }
+
+            if (type == null) {
+                // Gradient text cannot contain braces, so it ends at the first one
+                if (c == '{' || c == '}') {
+                    inGradient = c == '{' && gradientMatcher.region(position, format.length()).lookingAt();
+                }
+
+                position++;
+                continue;
+            }
+
+            if (inGradient) {
+                if (type == SegmentType.PLAYER || type == SegmentType.MESSAGE) {
+                    // Replaced after stylish, so such gradient has never been applied
+                    inGradient = false;
+                } else {
+                    return new FormatTemplate(format);
+                }
+            }
+
+            if (literalStart < position) {
+                segments.add(literal(format.substring(literalStart, position)));
+            }
+
+            segments.add(new Segment(type, format.substring(position, end)));
+            position = literalStart = end;
+        }
+
+        if (literalStart < format.length()) {
+            segments.add(literal(format.substring(literalStart)));
+        }
+
+        int length = 0;
+        for (Segment segment : segments) {
+            length += segment.text.length();
+        }
+
+        return new FormatTemplate(segments.toArray(new Segment[0]), length);
+    }
+
+    /**
+     * Renders format for {@link org.bukkit.event.player.AsyncPlayerChatEvent#setFormat(String)},
+     * where player name and message are "%1$s" and "%2$s"
+     * @param player message sender
+     * @param playerTagManager source of prefixes and suffixes
+     * @param placeholderAPI PlaceholderAPI hook, or null if it is not installed
+     * @return rendered format
+     */
+    public String render(@NotNull Player player, @NotNull PlayerTagManager playerTagManager,
+                         @Nullable PlaceholderAPIHook placeholderAPI) {
+        if (format != null) {
+            return renderWhole(player, playerTagManager, placeholderAPI);
+        }
+
+        StringBuilder builder = new StringBuilder(length + 32);
+
+        for (Segment segment : segments) {
+            switch (segment.type) {
+                case LITERAL:
+                    builder.append(segment.text);
+                    break;
+                case PLAYER:
+                    builder.append("%1$s");
+                    break;
+                case MESSAGE:
+                    builder.append("%2$s");
+                    break;
+                case PREFIX:
+                    appendValue(builder, playerTagManager.getPrefix(player), player, placeholderAPI);
+                    break;
+                case SUFFIX:
+                    appendValue(builder, playerTagManager.getSuffix(player), player, placeholderAPI);
+                    break;
+                case PLACEHOLDER:
+                    appendValue(builder, segment.text, player, placeholderAPI);
+                    break;
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private String renderWhole(Player player, PlayerTagManager playerTagManager,
+                               @Nullable PlaceholderAPIHook placeholderAPI) {
+        String format = this.format;
+
+        format = format.replace("{prefix}", playerTagManager.getPrefix(player));
+        format = format.replace("{suffix}", playerTagManager.getSuffix(player));
+
+        if (placeholderAPI != null) {
+            format = placeholderAPI.setPlaceholders(player, format);
+        }
+
+        format = TextUtil.stylish(format);
+
+        format = format.replace("%", "%%");
+        format = format.replace("{player}", "%1$s");
+        format = format.replace("{message}", "%2$s");
+
+        return format;
+    }
+
+    /**
+     * Appends value the same way as it was a part of the format:
+     * with PlaceholderAPI variables, colors and escaped percent signs
+     */
+    private static void appendValue(StringBuilder builder, String value, Player player,
+                                    @Nullable PlaceholderAPIHook placeholderAPI) {
+        if (placeholderAPI != null && value.indexOf('%') != -1) {
+            value = placeholderAPI.setPlaceholders(player, value);
+        }
+
+        if (value.indexOf('&') != -1 || value.indexOf('{') != -1) {
+            value = TextUtil.stylish(value);
+        }
+
+        appendEscaped(builder, value);
+    }
+
+    private static void appendEscaped(StringBuilder builder, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+
+            if (c == '%') {
+                builder.append('%');
+            }
+
+            builder.append(c);
+        }
+    }
+
+    private static Segment literal(String text) {
+        StringBuilder builder = new StringBuilder(text.length());
+        appendEscaped(builder, TextUtil.stylish(text));
+
+        return new Segment(SegmentType.LITERAL, builder.toString());
+    }
+
+    private enum SegmentType {
+
+        LITERAL(null),
+        PREFIX("{prefix}"),
+        SUFFIX("{suffix}"),
+        PLAYER("{player}"),
+        MESSAGE("{message}"),
+        PLACEHOLDER(null);
+
+        private static final SegmentType[] VARIABLES = { PREFIX, SUFFIX, PLAYER, MESSAGE };
+
+        private final String variable;
+
+        SegmentType(String variable) {
+            this.variable = variable;
+        }
+
+    }
+
+    private static final class Segment {
+
+        private final SegmentType type;
+        private final String text;
+
+        private Segment(SegmentType type, String text) {
+            this.type = type;
+            this.text = text;
+        }
+
+    }
+
+}
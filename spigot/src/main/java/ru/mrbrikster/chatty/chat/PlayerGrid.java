@@ -0,0 +1,208 @@
+package ru.mrbrikster.chatty.chat;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mrbrikster.chatty.Chatty;
+import ru.mrbrikster.chatty.reflection.Reflection;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Spatial index of online players, used by ranged chats.
+ * Every world is split into chunk-sized cells, so a range query
+ * visits only the cells around the sender instead of every online player.
+ *
+ * The index is changed only on the main thread, from player events and
+ * a periodic resynchronization (which also covers movements without events,
+ * e.g. riding vehicles). Queries are safe from async chat threads.
+ */
+public class PlayerGrid implements Listener {
+
+    private static final int CELL_SHIFT = 4;
+
+    private final Map<UUID, Position> positions = new ConcurrentHashMap<>();
+    private final Map<UUID, Map<Long, Set<Position>>> worlds = new ConcurrentHashMap<>();
+
+    public PlayerGrid(Chatty chatty) {
+        synchronize();
+
+        Bukkit.getPluginManager().registerEvents(this, chatty);
+        Bukkit.getScheduler().runTaskTimer(chatty, this::synchronize, 20L, 20L);
+    }
+
+    /**
+     * Finds players in the same world within range of the player
+     * @param player center player
+     * @param range range in blocks
+     * @return nearby players including the center player, or null if the player is not indexed yet
+     */
+    @Nullable
+    public Set<Player> getNearbyPlayers(@NotNull Player player, int range) {
+        Position center = positions.get(player.getUniqueId());
+
+        if (center == null) {
+            return null;
+        }
+
+        UUID world = center.world;
+        double x = center.x, y = center.y, z = center.z;
+
+        Map<Long, Set<Position>> cells = worlds.get(world);
+        if (cells == null) {
+            return null;
+        }
+
+        Set<Player> players = new HashSet<>();
+        double rangeSquared = (double) range * range;
+        int cellRadius = (range >> CELL_SHIFT) + 1;
+        long cellsToVisit = (2L * cellRadius + 1) * (2L * cellRadius + 1);
+
+        if (cellsToVisit > cells.size()) {
+            // Range covers more cells than are occupied in the world
+            for (Set<Position> cell : cells.values()) {
+                collect(cell, players, world, x, y, z, rangeSquared);
+            }
+        } else {
+            int cellX = (int) Math.floor(x) >> CELL_SHIFT;
+            int cellZ = (int) Math.floor(z) >> CELL_SHIFT;
+
+            for (int dx = -cellRadius; dx <= cellRadius; dx++) {
+                for (int dz = -cellRadius; dz <= cellRadius; dz++) {
+                    Set<Position> cell = cells.get(cellKey(cellX + dx, cellZ + dz));
+
+                    if (cell != null) {
+                        collect(cell, players, world, x, y, z, rangeSquared);
+                    }
+                }
+            }
+        }
+
+        players.add(player);
+        return players;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        update(event.getPlayer(), event.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        Position position = positions.remove(event.getPlayer().getUniqueId());
+
+        if (position != null) {
+            removeFromCell(position, position.world, position.cell);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onMove(PlayerMoveEvent event) {
+        Location to = event.getTo();
+
+        if (to != null) {
+            update(event.getPlayer(), to);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onTeleport(PlayerTeleportEvent event) {
+        onMove(event);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChangedWorld(PlayerChangedWorldEvent event) {
+        update(event.getPlayer(), event.getPlayer().getLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onRespawn(PlayerRespawnEvent event) {
+        update(event.getPlayer(), event.getRespawnLocation());
+    }
+
+    private void synchronize() {
+        for (Player player : Reflection.getOnlinePlayers()) {
+            update(player, player.getLocation());
+        }
+    }
+
+    private void update(Player player, Location location) {
+        if (location.getWorld() == null) {
+            return;
+        }
+
+        Position position = positions.computeIfAbsent(player.getUniqueId(), uuid -> new Position(player));
+
+        UUID world = location.getWorld().getUID();
+        long cell = cellKey(location.getBlockX() >> CELL_SHIFT, location.getBlockZ() >> CELL_SHIFT);
+
+        position.x = location.getX();
+        position.y = location.getY();
+        position.z = location.getZ();
+
+        if (cell != position.cell || !world.equals(position.world)) {
+            UUID oldWorld = position.world;
+            long oldCell = position.cell;
+
+            position.world = world;
+            position.cell = cell;
+
+            // Added before removal, so concurrent queries never miss the player
+            worlds.computeIfAbsent(world, uuid -> new ConcurrentHashMap<>())
+                    .computeIfAbsent(cell, key -> ConcurrentHashMap.newKeySet())
+                    .add(position);
+
+            if (oldWorld != null) {
+                removeFromCell(position, oldWorld, oldCell);
+            }
+        }
+    }
+
+    private void removeFromCell(Position position, UUID world, long cell) {
+        Map<Long, Set<Position>> cells = worlds.get(world);
+
+        if (cells != null) {
+            cells.computeIfPresent(cell, (key, players) -> {
+                players.remove(position);
+                return players.isEmpty() ? null : players;
+            });
+        }
+    }
+
+    private static void collect(Set<Position> cell, Set<Player> players,
+                                UUID world, double x, double y, double z, double rangeSquared) {
+        for (Position position : cell) {
+            double dx = position.x - x, dy = position.y - y, dz = position.z - z;
+
+            if (world.equals(position.world) && dx * dx + dy * dy + dz * dz <= rangeSquared) {
+                players.add(position.player);
+            }
+        }
+    }
+
+    private static long cellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    private static final class Position {
+
+        private final Player player;
+
+        private volatile UUID world;
+        private volatile long cell;
+        private volatile double x, y, z;
+
+        private Position(Player player) {
+            this.player = player;
+        }
+
+    }
+
+}
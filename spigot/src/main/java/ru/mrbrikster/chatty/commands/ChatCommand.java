@@ -9,18 +9,18 @@ import ru.mrbrikster.baseplugin.config.Configuration;
 import ru.mrbrikster.chatty.Chatty;
 import ru.mrbrikster.chatty.chat.Chat;
 import ru.mrbrikster.chatty.chat.ChatManager;
-import ru.mrbrikster.chatty.chat.JsonStorage;
+import ru.mrbrikster.chatty.storage.StorageBackend;
 
 public class ChatCommand extends BukkitCommand {
 
     private final ChatManager chatManager;
-    private final JsonStorage jsonStorage;
+    private final StorageBackend storage;
 
-    public ChatCommand(Configuration configuration, ChatManager chatManager, JsonStorage jsonStorage) {
+    public ChatCommand(Configuration configuration, ChatManager chatManager, StorageBackend storage) {
         super("chat", ArrayWrapper.toArray(configuration.getNode("miscellaneous.commands.chat.aliases").getAsStringList(), String.class));
 
         this.chatManager = chatManager;
-        this.jsonStorage = jsonStorage;
+        this.storage = storage;
     }
 
     @Override
@@ -39,7 +39,7 @@ public class ChatCommand extends BukkitCommand {
                     if (!chat.isPermissionRequired()
                             || sender.hasPermission(String.format("chatty.chat.%s", chat.getName()))
                             || sender.hasPermission(String.format("chatty.chat.%s.write", chat.getName()))) {
-                        jsonStorage.setProperty((Player) sender, "chat", new JsonPrimitive(chat.getName()));
+                        storage.setProperty((Player) sender, "chat", new JsonPrimitive(chat.getName()));
                         sender.sendMessage(Chatty.instance().messages().get("chat-command.chat-switched").replace("{chat}", chat.getName()));
                     } else {
                         sender.sendMessage(Chatty.instance().messages().get("chat-command.no-chat-permission"));
@@ -1,26 +1,153 @@
 package ru.mrbrikster.chatty.commands;
 
+import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
 import ru.mrbrikster.baseplugin.commands.BukkitCommand;
 import ru.mrbrikster.baseplugin.config.Configuration;
 import ru.mrbrikster.chatty.Chatty;
+import ru.mrbrikster.chatty.chat.ChatManager;
+import ru.mrbrikster.chatty.logging.ChatLogEntry;
+import ru.mrbrikster.chatty.logging.HistoryStore;
+import ru.mrbrikster.chatty.moderation.ModerationPipeline;
+import ru.mrbrikster.chatty.util.TimeUtil;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
 
 public class ChattyCommand extends BukkitCommand {
 
+    private static final int SEARCH_PAGE_SIZE = 10;
+    private static final DateTimeFormatter SEARCH_TIME_FORMATTER = DateTimeFormatter.ofPattern("dd.MM HH:mm");
+
     private final Configuration configuration;
+    private final ChatManager chatManager;
+    private final ModerationPipeline moderationPipeline;
 
-    ChattyCommand(Configuration configuration) {
+    ChattyCommand(Configuration configuration, ChatManager chatManager, ModerationPipeline moderationPipeline) {
         super("chatty");
 
         this.configuration = configuration;
+        this.chatManager = chatManager;
+        this.moderationPipeline = moderationPipeline;
     }
 
     @Override
     public void handle(CommandSender sender, String label, String[] args) {
+        if (args.length == 1 && args[0].equalsIgnoreCase("stats")) {
+            if (sender.hasPermission("chatty.command.stats")) {
+                sendStatistics(sender);
+            } else sender.sendMessage(Chatty.instance().messages().get("no-permission"));
+
+            return;
+        }
+
+        if (args.length >= 1 && args[0].equalsIgnoreCase("search")) {
+            if (sender.hasPermission("chatty.command.search")) {
+                search(sender, label, Arrays.copyOfRange(args, 1, args.length));
+            } else sender.sendMessage(Chatty.instance().messages().get("no-permission"));
+
+            return;
+        }
+
         if (sender.hasPermission("chatty.command.reload")) {
             configuration.reload();
             sender.sendMessage(Chatty.instance().messages().get("reload"));
         } else sender.sendMessage(Chatty.instance().messages().get("no-permission"));
     }
 
+    private void sendStatistics(CommandSender sender) {
+        sender.sendMessage(Chatty.instance().messages().get("chatty-command.stats-header"));
+
+        for (ModerationPipeline.Statistics statistics : moderationPipeline.getStatistics()) {
+            sender.sendMessage(Chatty.instance().messages().get("chatty-command.stats-line")
+                    .replace("{method}", statistics.getName())
+                    .replace("{calls}", String.valueOf(statistics.getCalls()))
+                    .replace("{hits}", String.valueOf(statistics.getHits()))
+                    .replace("{average}", String.format("%.1f", statistics.getAverageNanos() / 1000D)));
+        }
+
+        ModerationPipeline.CacheStatistics cacheStatistics = moderationPipeline.getCacheStatistics();
+
+        if (cacheStatistics != null) {
+            sender.sendMessage(Chatty.instance().messages().get("chatty-command.stats-cache")
+                    .replace("{hit-ratio}", String.format("%.1f", cacheStatistics.getHitRatio() * 100))
+                    .replace("{size}", String.valueOf(cacheStatistics.getSize())));
+        }
+    }
+
+    // <player|text> [since] [page]
+    private void search(CommandSender sender, String label, String[] args) {
+        HistoryStore historyStore = chatManager.getLogger().getHistoryStore().orElse(null);
+
+        if (historyStore == null) {
+            sender.sendMessage(Chatty.instance().messages().get("chatty-command.search-disabled"));
+            return;
+        }
+
+        int length = args.length, page = 1;
+        if (length > 1 && args[length - 1].matches("\\d{1,4}")) {
+            page = Math.max(1, Integer.parseInt(args[--length]));
+        }
+
+        long since = 0;
+        String sinceArgument = "";
+        if (length > 1) {
+            long duration = TimeUtil.parseDuration(args[length - 1]);
+
+            if (duration > 0) {
+                since = System.currentTimeMillis() - duration;
+                sinceArgument = " " + args[--length];
+            }
+        }
+
+        if (length == 0) {
+            sender.sendMessage(Chatty.instance().messages().get("chatty-command.search-usage")
+                    .replace("{label}", label));
+            return;
+        }
+
+        String query = String.join(" ", Arrays.copyOf(args, length));
+        UUID player = length == 1 ? historyStore.findSender(query).orElse(null) : null;
+
+        int pageNumber = page;
+        long sinceMillis = since;
+        String nextPageCommand = "/" + label + " search " + query + sinceArgument + " " + (page + 1);
+
+        // Segments are read from disk, so the search never runs on the main thread
+        Bukkit.getScheduler().runTaskAsynchronously(Chatty.instance(), () -> {
+            HistoryStore.Page result = historyStore.search(player, player == null ? query : null,
+                    sinceMillis, pageNumber - 1, SEARCH_PAGE_SIZE);
+
+            if (result.getEntries().isEmpty()) {
+                sender.sendMessage(Chatty.instance().messages().get("chatty-command.search-no-results"));
+                return;
+            }
+
+            sender.sendMessage(Chatty.instance().messages().get("chatty-command.search-header")
+                    .replace("{query}", query)
+                    .replace("{page}", String.valueOf(pageNumber)));
+
+            for (ChatLogEntry entry : result.getEntries()) {
+                List<String> flags = HistoryStore.getFlagNames(entry.getFlags());
+
+                sender.sendMessage(Chatty.instance().messages().get("chatty-command.search-line")
+                        .replace("{time}", SEARCH_TIME_FORMATTER.format(Instant.ofEpochMilli(entry.getTimestamp())
+                                .atZone(ZoneId.systemDefault())))
+                        .replace("{chat}", entry.getChat())
+                        .replace("{player}", entry.getPlayerName())
+                        .replace("{flags}", flags.isEmpty() ? "" : " [" + String.join(", ", flags) + "]")
+                        .replace("{message}", entry.getMessage()));
+            }
+
+            if (!result.isLastPage()) {
+                sender.sendMessage(Chatty.instance().messages().get("chatty-command.search-next-page")
+                        .replace("{command}", nextPageCommand));
+            }
+        });
+    }
+
 }
@@ -3,20 +3,24 @@ package ru.mrbrikster.chatty.commands;
 import ru.mrbrikster.baseplugin.config.Configuration;
 import ru.mrbrikster.chatty.Chatty;
 import ru.mrbrikster.chatty.chat.ChatManager;
-import ru.mrbrikster.chatty.chat.JsonStorage;
+import ru.mrbrikster.chatty.storage.IgnoreIndex;
+import ru.mrbrikster.chatty.storage.StorageBackend;
 import ru.mrbrikster.chatty.commands.pm.IgnoreCommand;
 import ru.mrbrikster.chatty.commands.pm.MsgCommand;
 import ru.mrbrikster.chatty.commands.pm.ReplyCommand;
 import ru.mrbrikster.chatty.dependencies.DependencyManager;
-import ru.mrbrikster.chatty.moderation.ModerationManager;
+import ru.mrbrikster.chatty.moderation.ModerationPipeline;
+import ru.mrbrikster.chatty.moderation.MuteManager;
 
 public class CommandManager {
 
     private final Configuration configuration;
     private final ChatManager chatManager;
     private final DependencyManager dependencyManager;
-    private final JsonStorage jsonStorage;
-    private final ModerationManager moderationManager;
+    private final StorageBackend storage;
+    private final IgnoreIndex ignoreIndex;
+    private final ModerationPipeline moderationPipeline;
+    private final MuteManager muteManager;
 
     private ChattyCommand chattyCommand;
     private ClearChatCommand clearChatCommand;
@@ -28,13 +32,17 @@ public class CommandManager {
     private ChatCommand chatCommand;
     private PrefixCommand prefixCommand;
     private SuffixCommand suffixCommand;
+    private MuteCommand muteCommand;
+    private UnmuteCommand unmuteCommand;
 
     public CommandManager(Chatty chatty) {
         this.configuration = chatty.getExact(Configuration.class);
         this.chatManager = chatty.getExact(ChatManager.class);
         this.dependencyManager = chatty.getExact(DependencyManager.class);
-        this.jsonStorage = chatty.getExact(JsonStorage.class);
-        this.moderationManager = chatty.getExact(ModerationManager.class);
+        this.storage = chatty.getExact(StorageBackend.class);
+        this.ignoreIndex = chatty.getExact(IgnoreIndex.class);
+        this.moderationPipeline = chatty.getExact(ModerationPipeline.class);
+        this.muteManager = chatty.getExact(MuteManager.class);
 
         this.init();
 
@@ -45,7 +53,7 @@ public class CommandManager {
     }
 
     private void init() {
-        this.chattyCommand = new ChattyCommand(configuration);
+        this.chattyCommand = new ChattyCommand(configuration, chatManager, moderationPipeline);
         this.chattyCommand.register(Chatty.instance());
 
         if (configuration.getNode("miscellaneous.commands.clearchat.enable").getAsBoolean(false)) {
@@ -54,22 +62,22 @@ public class CommandManager {
         }
 
         if (configuration.getNode("spy.enable").getAsBoolean(false)) {
-            this.spyCommand = new SpyCommand(jsonStorage);
+            this.spyCommand = new SpyCommand(storage);
             this.spyCommand.register(Chatty.instance());
         }
 
         if (configuration.getNode("pm.commands.msg.enable").getAsBoolean(false)) {
-            this.msgCommand = new MsgCommand(configuration, jsonStorage, moderationManager);
+            this.msgCommand = new MsgCommand(configuration, storage, ignoreIndex, moderationPipeline, muteManager);
             this.msgCommand.register(Chatty.instance());
         }
 
         if (configuration.getNode("pm.commands.ignore.enable").getAsBoolean(false)) {
-            this.ignoreCommand = new IgnoreCommand(configuration, jsonStorage);
+            this.ignoreCommand = new IgnoreCommand(configuration, ignoreIndex);
             this.ignoreCommand.register(Chatty.instance());
         }
 
         if (configuration.getNode("pm.commands.reply.enable").getAsBoolean(false)) {
-            this.replyCommand = new ReplyCommand(configuration, jsonStorage, moderationManager);
+            this.replyCommand = new ReplyCommand(configuration, storage, ignoreIndex, moderationPipeline, muteManager);
             this.replyCommand.register(Chatty.instance());
         }
 
@@ -79,19 +87,29 @@ public class CommandManager {
         }
 
         if (configuration.getNode("miscellaneous.commands.chat.enable").getAsBoolean(false)) {
-            this.chatCommand = new ChatCommand(configuration, chatManager, jsonStorage);
+            this.chatCommand = new ChatCommand(configuration, chatManager, storage);
             this.chatCommand.register(Chatty.instance());
         }
 
         if (configuration.getNode("miscellaneous.commands.prefix.enable").getAsBoolean(false)) {
-            this.prefixCommand = new PrefixCommand(configuration, dependencyManager, jsonStorage);
+            this.prefixCommand = new PrefixCommand(configuration, dependencyManager, storage);
             this.prefixCommand.register(Chatty.instance());
         }
 
         if (configuration.getNode("miscellaneous.commands.suffix.enable").getAsBoolean(false)) {
-            this.suffixCommand = new SuffixCommand(configuration, dependencyManager, jsonStorage);
+            this.suffixCommand = new SuffixCommand(configuration, dependencyManager, storage);
             this.suffixCommand.register(Chatty.instance());
         }
+
+        if (configuration.getNode("miscellaneous.commands.mute.enable").getAsBoolean(false)) {
+            this.muteCommand = new MuteCommand(configuration, chatManager, muteManager);
+            this.muteCommand.register(Chatty.instance());
+        }
+
+        if (configuration.getNode("miscellaneous.commands.unmute.enable").getAsBoolean(false)) {
+            this.unmuteCommand = new UnmuteCommand(configuration, chatManager, muteManager);
+            this.unmuteCommand.register(Chatty.instance());
+        }
     }
 
     public void unregisterAll() {
@@ -132,6 +150,14 @@ public class CommandManager {
         if (suffixCommand != null) {
             this.suffixCommand.unregister(Chatty.instance());
         }
+
+        if (muteCommand != null) {
+            this.muteCommand.unregister(Chatty.instance());
+        }
+
+        if (unmuteCommand != null) {
+            this.unmuteCommand.unregister(Chatty.instance());
+        }
     }
 
 }
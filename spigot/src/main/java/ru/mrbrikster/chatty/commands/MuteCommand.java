@@ -0,0 +1,77 @@
+package ru.mrbrikster.chatty.commands;
+
+import net.amoebaman.util.ArrayWrapper;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import ru.mrbrikster.baseplugin.commands.BukkitCommand;
+import ru.mrbrikster.baseplugin.config.Configuration;
+import ru.mrbrikster.chatty.Chatty;
+import ru.mrbrikster.chatty.chat.Chat;
+import ru.mrbrikster.chatty.chat.ChatManager;
+import ru.mrbrikster.chatty.moderation.MuteManager;
+import ru.mrbrikster.chatty.util.TimeUtil;
+
+public class MuteCommand extends BukkitCommand {
+
+    private final ChatManager chatManager;
+    private final MuteManager muteManager;
+
+    MuteCommand(Configuration configuration, ChatManager chatManager, MuteManager muteManager) {
+        super("mute", ArrayWrapper.toArray(configuration.getNode("miscellaneous.commands.mute.aliases").getAsStringList(), String.class));
+
+        this.chatManager = chatManager;
+        this.muteManager = muteManager;
+    }
+
+    @Override
+    public void handle(CommandSender sender, String label, String[] args) {
+        if (!sender.hasPermission("chatty.command.mute")) {
+            sender.sendMessage(Chatty.instance().messages().get("no-permission"));
+            return;
+        }
+
+        if (args.length != 2 && args.length != 3) {
+            sender.sendMessage(Chatty.instance().messages().get("mute-command.usage")
+                    .replace("{label}", label));
+            return;
+        }
+
+        Player player = Bukkit.getPlayer(args[0]);
+
+        if (player == null) {
+            sender.sendMessage(Chatty.instance().messages().get("mute-command.player-not-found"));
+            return;
+        }
+
+        long duration = TimeUtil.parseDuration(args[1]);
+
+        if (duration <= 0) {
+            sender.sendMessage(Chatty.instance().messages().get("mute-command.invalid-duration"));
+            return;
+        }
+
+        String formattedDuration = TimeUtil.formatDuration(duration);
+
+        if (args.length == 3) {
+            Chat chat = chatManager.getChat(args[2]);
+
+            if (chat == null) {
+                sender.sendMessage(Chatty.instance().messages().get("mute-command.chat-not-found"));
+                return;
+            }
+
+            muteManager.mute(player, chat.getName(), duration);
+            sender.sendMessage(Chatty.instance().messages().get("mute-command.muted-in-chat")
+                    .replace("{player}", player.getName())
+                    .replace("{chat}", chat.getName())
+                    .replace("{duration}", formattedDuration));
+        } else {
+            muteManager.mute(player, null, duration);
+            sender.sendMessage(Chatty.instance().messages().get("mute-command.muted")
+                    .replace("{player}", player.getName())
+                    .replace("{duration}", formattedDuration));
+        }
+    }
+
+}
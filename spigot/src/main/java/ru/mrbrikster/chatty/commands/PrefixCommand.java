@@ -7,7 +7,7 @@ import org.bukkit.entity.Player;
 import ru.mrbrikster.baseplugin.commands.BukkitCommand;
 import ru.mrbrikster.baseplugin.config.Configuration;
 import ru.mrbrikster.chatty.Chatty;
-import ru.mrbrikster.chatty.chat.JsonStorage;
+import ru.mrbrikster.chatty.storage.StorageBackend;
 import ru.mrbrikster.chatty.dependencies.DependencyManager;
 import ru.mrbrikster.chatty.util.TextUtil;
 
@@ -17,16 +17,16 @@ public class PrefixCommand extends BukkitCommand {
 
     private final Configuration configuration;
     private final DependencyManager dependencyManager;
-    private final JsonStorage jsonStorage;
+    private final StorageBackend storage;
 
     PrefixCommand(Configuration configuration,
                   DependencyManager dependencyManager,
-                  JsonStorage jsonStorage) {
+                  StorageBackend storage) {
         super("prefix", "setprefix");
 
         this.configuration = configuration;
         this.dependencyManager = dependencyManager;
-        this.jsonStorage = jsonStorage;
+        this.storage = storage;
     }
 
     @Override
@@ -50,7 +50,7 @@ public class PrefixCommand extends BukkitCommand {
             }
 
             if (args[1].equalsIgnoreCase("clear")) {
-                jsonStorage.setProperty(player, "prefix", null);
+                storage.setProperty(player, "prefix", null);
 
                 if (configuration.getNode("miscellaneous.commands.prefix.auto-nte").getAsBoolean(false)) {
                     if (dependencyManager.getNametagEdit() != null) {
@@ -78,7 +78,7 @@ public class PrefixCommand extends BukkitCommand {
                     return;
                 }
 
-                jsonStorage.setProperty(player, "prefix", new JsonPrimitive(formattedPrefix));
+                storage.setProperty(player, "prefix", new JsonPrimitive(formattedPrefix));
 
                 if (configuration.getNode("miscellaneous.commands.prefix.auto-nte").getAsBoolean(false)) {
                     if (dependencyManager.getNametagEdit() != null) {
@@ -5,16 +5,16 @@ import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
 import ru.mrbrikster.baseplugin.commands.BukkitCommand;
 import ru.mrbrikster.chatty.Chatty;
-import ru.mrbrikster.chatty.chat.JsonStorage;
+import ru.mrbrikster.chatty.storage.StorageBackend;
 
 public class SpyCommand extends BukkitCommand {
 
-    private final JsonStorage jsonStorage;
+    private final StorageBackend storage;
 
-    SpyCommand(JsonStorage jsonStorage) {
+    SpyCommand(StorageBackend storage) {
         super("spy");
 
-        this.jsonStorage = jsonStorage;
+        this.storage = storage;
     }
 
     @Override
@@ -25,11 +25,11 @@ public class SpyCommand extends BukkitCommand {
                 return;
             }
 
-            if (jsonStorage.getProperty((Player) sender, "spy-mode").orElse(new JsonPrimitive(true)).getAsBoolean()) {
-                jsonStorage.setProperty((Player) sender, "spy-mode", new JsonPrimitive(false));
+            if (storage.getProperty((Player) sender, "spy-mode").orElse(new JsonPrimitive(true)).getAsBoolean()) {
+                storage.setProperty((Player) sender, "spy-mode", new JsonPrimitive(false));
                 sender.sendMessage(Chatty.instance().messages().get("spy-off"));
             } else {
-                jsonStorage.setProperty((Player) sender, "spy-mode", new JsonPrimitive(true));
+                storage.setProperty((Player) sender, "spy-mode", new JsonPrimitive(true));
                 sender.sendMessage(Chatty.instance().messages().get("spy-on"));
             }
         } else {
@@ -7,7 +7,7 @@ import org.bukkit.entity.Player;
 import ru.mrbrikster.baseplugin.commands.BukkitCommand;
 import ru.mrbrikster.baseplugin.config.Configuration;
 import ru.mrbrikster.chatty.Chatty;
-import ru.mrbrikster.chatty.chat.JsonStorage;
+import ru.mrbrikster.chatty.storage.StorageBackend;
 import ru.mrbrikster.chatty.dependencies.DependencyManager;
 import ru.mrbrikster.chatty.util.TextUtil;
 
@@ -16,17 +16,17 @@ import java.util.Arrays;
 public class SuffixCommand extends BukkitCommand {
 
     private final Configuration configuration;
-    private final JsonStorage jsonStorage;
+    private final StorageBackend storage;
     private final DependencyManager dependencyManager;
 
     SuffixCommand(Configuration configuration,
                   DependencyManager dependencyManager,
-                  JsonStorage jsonStorage) {
+                  StorageBackend storage) {
         super("suffix", "setsuffix");
 
         this.configuration = configuration;
         this.dependencyManager = dependencyManager;
-        this.jsonStorage = jsonStorage;
+        this.storage = storage;
     }
 
     @Override
@@ -50,7 +50,7 @@ public class SuffixCommand extends BukkitCommand {
             }
 
             if (args[1].equalsIgnoreCase("clear")) {
-                jsonStorage.setProperty(player, "suffix", null);
+                storage.setProperty(player, "suffix", null);
 
                 if (configuration.getNode("miscellaneous.commands.suffix.auto-nte").getAsBoolean(false)) {
                     if (dependencyManager.getNametagEdit() != null) {
@@ -78,7 +78,7 @@ public class SuffixCommand extends BukkitCommand {
                     return;
                 }
 
-                jsonStorage.setProperty(player, "suffix", new JsonPrimitive(formattedSuffix));
+                storage.setProperty(player, "suffix", new JsonPrimitive(formattedSuffix));
 
                 if (configuration.getNode("miscellaneous.commands.suffix.auto-nte").getAsBoolean(false)) {
                     if (dependencyManager.getNametagEdit() != null) {
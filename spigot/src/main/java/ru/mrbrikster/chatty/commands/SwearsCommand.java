@@ -1,14 +1,12 @@
 package ru.mrbrikster.chatty.commands;
 
-import com.google.common.io.Files;
 import org.bukkit.command.CommandSender;
 import ru.mrbrikster.baseplugin.commands.BukkitCommand;
 import ru.mrbrikster.chatty.Chatty;
 import ru.mrbrikster.chatty.moderation.SwearModerationMethod;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class SwearsCommand extends BukkitCommand {
 
@@ -24,13 +22,15 @@ public class SwearsCommand extends BukkitCommand {
                 String word = args[1];
 
                 try {
-                    Files.append("\n" + word, SwearModerationMethod.getWhitelistFile(), StandardCharsets.UTF_8);
+                    SwearModerationMethod.addWord(word);
+                } catch (PatternSyntaxException e) {
+                    sender.sendMessage(Chatty.instance().messages().get("swears-command.invalid-word")
+                            .replace("{word}", word).replace("{error}", e.getDescription()));
+                    return;
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
 
-                SwearModerationMethod.addWord(Pattern.compile(word, Pattern.CASE_INSENSITIVE));
-
                 sender.sendMessage(Chatty.instance().messages().get("swears-command.add-word").replace("{word}", word));
             } else sender.sendMessage(Chatty.instance().messages().get("swears-command.usage")
                     .replace("{label}", label));
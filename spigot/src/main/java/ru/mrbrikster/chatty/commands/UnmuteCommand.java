@@ -0,0 +1,67 @@
+package ru.mrbrikster.chatty.commands;
+
+import net.amoebaman.util.ArrayWrapper;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import ru.mrbrikster.baseplugin.commands.BukkitCommand;
+import ru.mrbrikster.baseplugin.config.Configuration;
+import ru.mrbrikster.chatty.Chatty;
+import ru.mrbrikster.chatty.chat.Chat;
+import ru.mrbrikster.chatty.chat.ChatManager;
+import ru.mrbrikster.chatty.moderation.MuteManager;
+
+public class UnmuteCommand extends BukkitCommand {
+
+    private final ChatManager chatManager;
+    private final MuteManager muteManager;
+
+    UnmuteCommand(Configuration configuration, ChatManager chatManager, MuteManager muteManager) {
+        super("unmute", ArrayWrapper.toArray(configuration.getNode("miscellaneous.commands.unmute.aliases").getAsStringList(), String.class));
+
+        this.chatManager = chatManager;
+        this.muteManager = muteManager;
+    }
+
+    @Override
+    public void handle(CommandSender sender, String label, String[] args) {
+        if (!sender.hasPermission("chatty.command.unmute")) {
+            sender.sendMessage(Chatty.instance().messages().get("no-permission"));
+            return;
+        }
+
+        if (args.length != 1 && args.length != 2) {
+            sender.sendMessage(Chatty.instance().messages().get("unmute-command.usage")
+                    .replace("{label}", label));
+            return;
+        }
+
+        Player player = Bukkit.getPlayer(args[0]);
+
+        if (player == null) {
+            sender.sendMessage(Chatty.instance().messages().get("unmute-command.player-not-found"));
+            return;
+        }
+
+        String chatName = null;
+        if (args.length == 2) {
+            Chat chat = chatManager.getChat(args[1]);
+
+            if (chat == null) {
+                sender.sendMessage(Chatty.instance().messages().get("unmute-command.chat-not-found"));
+                return;
+            }
+
+            chatName = chat.getName();
+        }
+
+        if (muteManager.unmute(player, chatName)) {
+            sender.sendMessage(Chatty.instance().messages().get("unmute-command.unmuted")
+                    .replace("{player}", player.getName()));
+        } else {
+            sender.sendMessage(Chatty.instance().messages().get("unmute-command.not-muted")
+                    .replace("{player}", player.getName()));
+        }
+    }
+
+}
@@ -1,9 +1,6 @@
 package ru.mrbrikster.chatty.commands.pm;
 
 import com.google.common.base.Joiner;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonPrimitive;
 import net.amoebaman.util.ArrayWrapper;
 import org.bukkit.Bukkit;
 import org.bukkit.command.CommandSender;
@@ -11,20 +8,20 @@ import org.bukkit.entity.Player;
 import ru.mrbrikster.baseplugin.commands.BukkitCommand;
 import ru.mrbrikster.baseplugin.config.Configuration;
 import ru.mrbrikster.chatty.Chatty;
-import ru.mrbrikster.chatty.chat.JsonStorage;
+import ru.mrbrikster.chatty.storage.IgnoreIndex;
 
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 public class IgnoreCommand extends BukkitCommand {
 
-    private final JsonStorage jsonStorage;
+    private final IgnoreIndex ignoreIndex;
 
     public IgnoreCommand(
             Configuration configuration,
-            JsonStorage jsonStorage) {
+            IgnoreIndex ignoreIndex) {
         super("ignore", ArrayWrapper.toArray(configuration.getNode("pm.commands.ignore.aliases").getAsStringList(), String.class));
-        this.jsonStorage = jsonStorage;
+        this.ignoreIndex = ignoreIndex;
     }
 
     @Override
@@ -41,15 +38,7 @@ public class IgnoreCommand extends BukkitCommand {
 
         if (args.length != 1) {
             if (args.length == 0) {
-                JsonElement jsonElement = jsonStorage.getProperty((Player) sender, "ignore").orElseGet(JsonArray::new);
-
-                if (!jsonElement.isJsonArray())
-                    jsonElement = new JsonArray();
-
-                Set<String> ignoreList = new HashSet<>();
-                for (JsonElement element : jsonElement.getAsJsonArray()) {
-                    ignoreList.add(element.getAsString());
-                }
+                Set<String> ignoreList = ignoreIndex.getIgnored((Player) sender);
 
                 if (!ignoreList.isEmpty()) {
                     String joinedIgnoreList = Joiner.on(Chatty.instance().messages().get("ignore-command.ignore-list-delimiter"))
@@ -72,17 +61,18 @@ public class IgnoreCommand extends BukkitCommand {
             return;
         }
 
-        JsonElement jsonElement = jsonStorage.getProperty((Player) sender, "ignore").orElseGet(JsonArray::new);
-
-        if (!jsonElement.isJsonArray())
-            jsonElement = new JsonArray();
+        if (!ignoreIndex.isLoaded((Player) sender)) {
+            sender.sendMessage(Chatty.instance().messages().get("ignore-command.not-loaded"));
+            return;
+        }
 
+        Set<String> ignoreList = new LinkedHashSet<>(ignoreIndex.getIgnored((Player) sender));
         Player ignoreTargetPlayer = Bukkit.getPlayer(ignoreTarget);
 
-        if (jsonElement.getAsJsonArray().contains(new JsonPrimitive(ignoreTarget.toLowerCase()))) {
+        if (ignoreList.contains(ignoreTarget.toLowerCase())) {
             sender.sendMessage(Chatty.instance().messages().get("ignore-command.remove-ignore")
                     .replace("{label}", label).replace("{player}", ignoreTargetPlayer == null ? ignoreTarget : ignoreTargetPlayer.getName()));
-            ((JsonArray) jsonElement).remove(new JsonPrimitive(ignoreTarget.toLowerCase()));
+            ignoreList.remove(ignoreTarget.toLowerCase());
         } else {
             if (ignoreTargetPlayer == null) {
                 sender.sendMessage(Chatty.instance().messages().get("ignore-command.player-not-found")
@@ -92,10 +82,10 @@ public class IgnoreCommand extends BukkitCommand {
 
             sender.sendMessage(Chatty.instance().messages().get("ignore-command.add-ignore")
                     .replace("{label}", label).replace("{player}", ignoreTargetPlayer.getName()));
-            jsonElement.getAsJsonArray().add(ignoreTargetPlayer.getName().toLowerCase());
+            ignoreList.add(ignoreTargetPlayer.getName().toLowerCase());
         }
 
-        jsonStorage.setProperty((Player) sender, "ignore", jsonElement);
+        ignoreIndex.setIgnored((Player) sender, ignoreList);
     }
 
 }
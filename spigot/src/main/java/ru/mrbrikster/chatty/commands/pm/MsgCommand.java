@@ -8,35 +8,43 @@ import org.bukkit.entity.Player;
 import ru.mrbrikster.baseplugin.commands.BukkitCommand;
 import ru.mrbrikster.baseplugin.config.Configuration;
 import ru.mrbrikster.chatty.Chatty;
-import ru.mrbrikster.chatty.chat.JsonStorage;
+import ru.mrbrikster.chatty.storage.IgnoreIndex;
+import ru.mrbrikster.chatty.storage.StorageBackend;
 import ru.mrbrikster.chatty.dependencies.PlayerTagManager;
-import ru.mrbrikster.chatty.moderation.AdvertisementModerationMethod;
-import ru.mrbrikster.chatty.moderation.ModerationManager;
-import ru.mrbrikster.chatty.moderation.SwearModerationMethod;
+import ru.mrbrikster.chatty.moderation.ModerationPipeline;
+import ru.mrbrikster.chatty.moderation.MuteManager;
 import ru.mrbrikster.chatty.reflection.Reflection;
 import ru.mrbrikster.chatty.util.TextUtil;
+import ru.mrbrikster.chatty.util.TimeUtil;
 
 import java.util.Arrays;
+import java.util.Optional;
 
 public class MsgCommand extends BukkitCommand {
 
     private final Configuration configuration;
-    private final JsonStorage jsonStorage;
+    private final StorageBackend storage;
+    private final IgnoreIndex ignoreIndex;
 
     private final PlayerTagManager playerTagManager;
-    private final ModerationManager moderationManager;
+    private final ModerationPipeline moderationPipeline;
+    private final MuteManager muteManager;
 
     public MsgCommand(
             Configuration configuration,
-            JsonStorage jsonStorage,
-            ModerationManager moderationManager) {
+            StorageBackend storage,
+            IgnoreIndex ignoreIndex,
+            ModerationPipeline moderationPipeline,
+            MuteManager muteManager) {
         super("msg", ArrayWrapper.toArray(configuration.getNode("pm.commands.msg.aliases").getAsStringList(), String.class));
 
         this.configuration = configuration;
-        this.jsonStorage = jsonStorage;
+        this.storage = storage;
+        this.ignoreIndex = ignoreIndex;
 
         this.playerTagManager = new PlayerTagManager(Chatty.instance());
-        this.moderationManager = moderationManager;
+        this.moderationPipeline = moderationPipeline;
+        this.muteManager = muteManager;
     }
 
     @Override
@@ -57,6 +65,16 @@ public class MsgCommand extends BukkitCommand {
             return;
         }
 
+        if (sender instanceof Player) {
+            Optional<MuteManager.Mute> mute = muteManager.getMute((Player) sender, null);
+
+            if (mute.isPresent()) {
+                sender.sendMessage(Chatty.instance().messages().get("muted")
+                        .replace("{duration}", TimeUtil.formatDuration(mute.get().getRemaining())));
+                return;
+            }
+        }
+
         String recipientName = args[0];
         String message = String.join(" ", Arrays.copyOfRange(args, 1, args.length));
 
@@ -79,7 +97,7 @@ public class MsgCommand extends BukkitCommand {
             recipientName = ((Player) recipient).getDisplayName();
             recipientPrefix = playerTagManager.getPrefix((Player) recipient);
             recipientSuffix = playerTagManager.getSuffix((Player) recipient);
-            jsonStorage.setProperty((Player) recipient, "last-pm-interlocutor", new JsonPrimitive(sender.getName()));
+            storage.setProperty((Player) recipient, "last-pm-interlocutor", new JsonPrimitive(sender.getName()));
         } else {
             recipientName = recipient.getName();
             recipientPrefix = "";
@@ -92,49 +110,11 @@ public class MsgCommand extends BukkitCommand {
             senderName = ((Player) sender).getDisplayName();
             senderPrefix = playerTagManager.getPrefix((Player) sender);
             senderSuffix = playerTagManager.getSuffix((Player) sender);
-            jsonStorage.setProperty((Player) sender, "last-pm-interlocutor", new JsonPrimitive(recipientName));
-
-            if (moderationManager.isSwearModerationEnabled()) {
-                SwearModerationMethod swearMethod = moderationManager.getSwearMethod(message);
-                if (!sender.hasPermission("chatty.moderation.swear")) {
-                    if (swearMethod.isBlocked()) {
-                        message = swearMethod.getEditedMessage();
-
-                        if (swearMethod.isUseBlock()) {
-                           cancelledByModeration = true;
-                        } else {
-                            message = swearMethod.getEditedMessage();
-                        }
-
-                        String swearFound = Chatty.instance().messages().get("swear-found", null);
-
-                        if (swearFound != null)
-                            Bukkit.getScheduler().runTaskLaterAsynchronously(Chatty.instance(),
-                                    () -> sender.sendMessage(swearFound), 5L);
-                    }
-                }
-            }
+            storage.setProperty((Player) sender, "last-pm-interlocutor", new JsonPrimitive(recipientName));
 
-            if (this.moderationManager.isAdvertisementModerationEnabled()) {
-                AdvertisementModerationMethod advertisementMethod = this.moderationManager.getAdvertisementMethod(message);
-                if (!sender.hasPermission("chatty.moderation.advertisement")) {
-                    if (advertisementMethod.isBlocked()) {
-                        message = advertisementMethod.getEditedMessage();
-
-                        if (advertisementMethod.isUseBlock()) {
-                            cancelledByModeration = true;
-                        } else {
-                            message = advertisementMethod.getEditedMessage();
-                        }
-
-                        String adsFound = Chatty.instance().messages().get("advertisement-found", null);
-
-                        if (adsFound != null)
-                            Bukkit.getScheduler().runTaskLaterAsynchronously(Chatty.instance(),
-                                    () -> sender.sendMessage(adsFound), 5L);
-                    }
-                }
-            }
+            ModerationPipeline.Result moderation = moderationPipeline.moderate(sender, message, method -> true);
+            message = moderation.getMessage();
+            cancelledByModeration = moderation.isBlocked();
         } else {
             senderName = sender.getName();
             senderPrefix = "";
@@ -146,7 +126,7 @@ public class MsgCommand extends BukkitCommand {
         }
 
         String senderFormat;
-        if (!jsonStorage.isIgnore(recipient, sender)) {
+        if (!ignoreIndex.isIgnore(recipient, sender)) {
             recipient.sendMessage(TextUtil.stylish(configuration.getNode("pm.format.recipient")
                     .getAsString("&7{sender-prefix}{sender-name} &6-> &7{recipient-prefix}{recipient-name}: &f{message}")
                     .replace("{sender-prefix}", senderPrefix)
@@ -172,18 +152,18 @@ public class MsgCommand extends BukkitCommand {
                 recipientPrefix, recipientName, recipientSuffix,
                 senderPrefix, senderName, senderSuffix,
                 senderFormat, message,
-                jsonStorage, configuration);
+                storage, configuration);
     }
 
     static void sendMessageToSpy(CommandSender sender, CommandSender recipient,
                                  String recipientPrefix, String recipientName, String recipientSuffix,
                                  String senderPrefix, String senderName, String senderSuffix,
                                  String senderFormat, String message,
-                                 JsonStorage jsonStorage, Configuration configuration) {
+                                 StorageBackend storage, Configuration configuration) {
         Reflection.getOnlinePlayers().stream()
                 .filter(spyPlayer -> !spyPlayer.equals(sender) && !spyPlayer.equals(recipient))
                 .filter(spyPlayer -> spyPlayer.hasPermission("chatty.spy") || spyPlayer.hasPermission("chatty.spy.pm"))
-                .filter(spyPlayer -> jsonStorage.getProperty(spyPlayer, "spy-mode").orElse(new JsonPrimitive(true)).getAsBoolean())
+                .filter(spyPlayer -> storage.getProperty(spyPlayer, "spy-mode").orElse(new JsonPrimitive(true)).getAsBoolean())
                 .forEach(spyPlayer -> spyPlayer.sendMessage(
                         TextUtil.stylish(configuration.getNode("spy.format.pm")
                                 .getAsString("&6[Spy] &r{format}")
@@ -9,33 +9,40 @@ import org.bukkit.entity.Player;
 import ru.mrbrikster.baseplugin.commands.BukkitCommand;
 import ru.mrbrikster.baseplugin.config.Configuration;
 import ru.mrbrikster.chatty.Chatty;
-import ru.mrbrikster.chatty.chat.JsonStorage;
+import ru.mrbrikster.chatty.storage.IgnoreIndex;
+import ru.mrbrikster.chatty.storage.StorageBackend;
 import ru.mrbrikster.chatty.dependencies.PlayerTagManager;
-import ru.mrbrikster.chatty.moderation.AdvertisementModerationMethod;
-import ru.mrbrikster.chatty.moderation.ModerationManager;
-import ru.mrbrikster.chatty.moderation.SwearModerationMethod;
+import ru.mrbrikster.chatty.moderation.ModerationPipeline;
+import ru.mrbrikster.chatty.moderation.MuteManager;
 import ru.mrbrikster.chatty.util.TextUtil;
+import ru.mrbrikster.chatty.util.TimeUtil;
 
 import java.util.Optional;
 
 public class ReplyCommand extends BukkitCommand {
 
     private final Configuration configuration;
-    private final JsonStorage jsonStorage;
+    private final StorageBackend storage;
+    private final IgnoreIndex ignoreIndex;
     private final PlayerTagManager playerTagManager;
-    private final ModerationManager moderationManager;
+    private final ModerationPipeline moderationPipeline;
+    private final MuteManager muteManager;
 
     public ReplyCommand(
             Configuration configuration,
-            JsonStorage jsonStorage,
-            ModerationManager moderationManager) {
+            StorageBackend storage,
+            IgnoreIndex ignoreIndex,
+            ModerationPipeline moderationPipeline,
+            MuteManager muteManager) {
         super("reply", ArrayWrapper.toArray(configuration.getNode("pm.commands.reply.aliases").getAsStringList(), String.class));
 
         this.configuration = configuration;
-        this.jsonStorage = jsonStorage;
+        this.storage = storage;
+        this.ignoreIndex = ignoreIndex;
 
         this.playerTagManager = new PlayerTagManager(Chatty.instance());
-        this.moderationManager = moderationManager;
+        this.moderationPipeline = moderationPipeline;
+        this.muteManager = muteManager;
     }
 
     @Override
@@ -56,9 +63,17 @@ public class ReplyCommand extends BukkitCommand {
             return;
         }
 
+        Optional<MuteManager.Mute> mute = muteManager.getMute((Player) sender, null);
+
+        if (mute.isPresent()) {
+            sender.sendMessage(Chatty.instance().messages().get("muted")
+                    .replace("{duration}", TimeUtil.formatDuration(mute.get().getRemaining())));
+            return;
+        }
+
         String message = String.join(" ", args);
 
-        Optional<String> optionalRecipient = jsonStorage.getProperty((Player) sender, "last-pm-interlocutor").map(JsonElement::getAsString);
+        Optional<String> optionalRecipient = storage.getProperty((Player) sender, "last-pm-interlocutor").map(JsonElement::getAsString);
         if (!optionalRecipient.isPresent()) {
             sender.sendMessage(Chatty.instance().messages().get("reply-command.target-not-found"));
             return;
@@ -80,7 +95,7 @@ public class ReplyCommand extends BukkitCommand {
             recipientName = recipientPlayer.getDisplayName();
             recipientPrefix = playerTagManager.getPrefix(recipientPlayer);
             recipientSuffix = playerTagManager.getSuffix(recipientPlayer);
-            jsonStorage.setProperty(recipientPlayer, "last-pm-interlocutor", new JsonPrimitive(sender.getName()));
+            storage.setProperty(recipientPlayer, "last-pm-interlocutor", new JsonPrimitive(sender.getName()));
         } else {
             recipientName = recipient.getName();
             recipientPrefix = "";
@@ -90,56 +105,16 @@ public class ReplyCommand extends BukkitCommand {
         String senderName = ((Player) sender).getDisplayName();
         String senderPrefix = playerTagManager.getPrefix((Player) sender);
         String senderSuffix = playerTagManager.getSuffix((Player) sender);
-        jsonStorage.setProperty((Player) sender, "last-pm-interlocutor", new JsonPrimitive(recipientName));
-
-        boolean cancelledByModeration = false;
-        if (moderationManager.isSwearModerationEnabled()) {
-            SwearModerationMethod swearMethod = moderationManager.getSwearMethod(message);
-            if (!sender.hasPermission("chatty.moderation.swear")) {
-                if (swearMethod.isBlocked()) {
-                    message = swearMethod.getEditedMessage();
-
-                    if (swearMethod.isUseBlock()) {
-                        cancelledByModeration = true;
-                    } else {
-                        message = swearMethod.getEditedMessage();
-                    }
-
-                    String swearFound = Chatty.instance().messages().get("swear-found", null);
-
-                    if (swearFound != null)
-                        Bukkit.getScheduler().runTaskLaterAsynchronously(Chatty.instance(),
-                                () -> sender.sendMessage(swearFound), 5L);
-                }
-            }
-        }
+        storage.setProperty((Player) sender, "last-pm-interlocutor", new JsonPrimitive(recipientName));
 
-        if (this.moderationManager.isAdvertisementModerationEnabled()) {
-            AdvertisementModerationMethod advertisementMethod = this.moderationManager.getAdvertisementMethod(message);
-            if (!sender.hasPermission("chatty.moderation.advertisement")) {
-                if (advertisementMethod.isBlocked()) {
-                    message = advertisementMethod.getEditedMessage();
-
-                    if (advertisementMethod.isUseBlock()) {
-                        cancelledByModeration = true;
-                    } else {
-                        message = advertisementMethod.getEditedMessage();
-                    }
-
-                    String adsFound = Chatty.instance().messages().get("advertisement-found", null);
-
-                    if (adsFound != null)
-                        Bukkit.getScheduler().runTaskLaterAsynchronously(Chatty.instance(),
-                                () -> sender.sendMessage(adsFound), 5L);
-                }
-            }
-        }
+        ModerationPipeline.Result moderation = moderationPipeline.moderate(sender, message, method -> true);
+        message = moderation.getMessage();
 
-        if (cancelledByModeration) {
+        if (moderation.isBlocked()) {
             return;
         }
 
-        if (!jsonStorage.isIgnore(recipient, sender)) {
+        if (!ignoreIndex.isIgnore(recipient, sender)) {
             recipient.sendMessage(TextUtil.stylish(configuration.getNode("pm.format.recipient")
                     .getAsString("&7{sender-prefix}{sender-name} &6-> &7{recipient-prefix}{recipient-name}: &f{message}")
                             .replace("{sender-prefix}", senderPrefix)
@@ -168,7 +143,7 @@ public class ReplyCommand extends BukkitCommand {
                 recipientPrefix, recipientName, recipientSuffix,
                 senderPrefix, senderName, senderSuffix,
                 senderFormat, message,
-                jsonStorage, configuration);
+                storage, configuration);
     }
 
 }
@@ -3,7 +3,7 @@ package ru.mrbrikster.chatty.dependencies;
 import lombok.Getter;
 import ru.mrbrikster.baseplugin.config.Configuration;
 import ru.mrbrikster.chatty.Chatty;
-import ru.mrbrikster.chatty.chat.JsonStorage;
+import ru.mrbrikster.chatty.storage.StorageBackend;
 
 import java.util.logging.Level;
 
@@ -15,7 +15,7 @@ public class DependencyManager {
 
     public DependencyManager(Chatty chatty) {
         Configuration configuration = chatty.getExact(Configuration.class);
-        JsonStorage jsonStorage = chatty.getExact(JsonStorage.class);
+        StorageBackend storage = chatty.getExact(StorageBackend.class);
 
         if (chatty.getServer().getPluginManager().isPluginEnabled("Vault")) {
             this.vault = new VaultHook();
@@ -28,7 +28,7 @@ public class DependencyManager {
         }
 
         if (chatty.getServer().getPluginManager().isPluginEnabled("NametagEdit")) {
-            this.nametagEdit = new NametagEditHook(configuration, jsonStorage);
+            this.nametagEdit = new NametagEditHook(configuration, storage);
             chatty.getLogger().log(Level.INFO, "NametagEdit has successful hooked.");
         }
     }
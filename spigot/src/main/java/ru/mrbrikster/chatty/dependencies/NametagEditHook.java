@@ -8,17 +8,17 @@ import org.bukkit.event.EventHandler;
 import org.bukkit.event.Listener;
 import ru.mrbrikster.baseplugin.config.Configuration;
 import ru.mrbrikster.chatty.Chatty;
-import ru.mrbrikster.chatty.chat.JsonStorage;
+import ru.mrbrikster.chatty.storage.StorageBackend;
 
 public class NametagEditHook implements Listener {
 
     private final Configuration configuration;
-    private final JsonStorage jsonStorage;
+    private final StorageBackend storage;
 
     NametagEditHook(Configuration configuration,
-                    JsonStorage jsonStorage) {
+                    StorageBackend storage) {
         this.configuration = configuration;
-        this.jsonStorage = jsonStorage;
+        this.storage = storage;
 
         Bukkit.getPluginManager().registerEvents(this, Chatty.instance());
     }
@@ -49,12 +49,12 @@ public class NametagEditHook implements Listener {
 
         if (configuration.getNode("miscellaneous.commands.prefix.enable").getAsBoolean(false)
                 && configuration.getNode("miscellaneous.commands.prefix.auto-nte").getAsBoolean(false)) {
-            jsonStorage.getProperty(player, "prefix").ifPresent(prefix -> setPrefix(player, prefix.getAsString()));
+            storage.getProperty(player, "prefix").ifPresent(prefix -> setPrefix(player, prefix.getAsString()));
         }
 
         if (configuration.getNode("miscellaneous.commands.suffix.enable").getAsBoolean(false)
                 && configuration.getNode("miscellaneous.commands.suffix .auto-nte").getAsBoolean(false)) {
-            jsonStorage.getProperty(player, "suffix").ifPresent(suffix -> setSuffix(player, suffix.getAsString()));
+            storage.getProperty(player, "suffix").ifPresent(suffix -> setSuffix(player, suffix.getAsString()));
         }
     }
 
@@ -8,12 +8,14 @@ import java.util.regex.Pattern;
 
 public class PlaceholderAPIHook {
 
+    public static final Pattern PLACEHOLDER_PATTERN = Pattern.compile("[%]([^%]+)[%]");
+
     public String setPlaceholders(Player player, String message) {
-        return PlaceholderAPI.setPlaceholders(player, message, Pattern.compile("[%]([^%]+)[%]"));
+        return PlaceholderAPI.setPlaceholders(player, message, PLACEHOLDER_PATTERN);
     }
 
     public List<String> setPlaceholders(Player player, List<String> messages) {
-        return PlaceholderAPI.setPlaceholders(player, messages, Pattern.compile("[%]([^%]+)[%]"));
+        return PlaceholderAPI.setPlaceholders(player, messages, PLACEHOLDER_PATTERN);
     }
 
 }
@@ -3,24 +3,24 @@ package ru.mrbrikster.chatty.dependencies;
 import com.google.gson.JsonElement;
 import org.bukkit.entity.Player;
 import ru.mrbrikster.chatty.Chatty;
-import ru.mrbrikster.chatty.chat.JsonStorage;
+import ru.mrbrikster.chatty.storage.StorageBackend;
 
 import java.util.Optional;
 
 public class PlayerTagManager {
 
     private final DependencyManager dependencyManager;
-    private final JsonStorage jsonStorage;
+    private final StorageBackend storage;
 
     public PlayerTagManager(Chatty chatty) {
         this.dependencyManager = chatty.getExact(DependencyManager.class);
-        this.jsonStorage = chatty.getExact(JsonStorage.class);
+        this.storage = chatty.getExact(StorageBackend.class);
     }
 
     public String getPrefix(Player player) {
         String prefix = "";
 
-        Optional<JsonElement> jsonElement = jsonStorage.getProperty(player, "prefix");
+        Optional<JsonElement> jsonElement = storage.getProperty(player, "prefix");
 
         if (jsonElement.isPresent()) {
             return jsonElement.get().getAsString();
@@ -39,7 +39,7 @@ public class PlayerTagManager {
     public String getSuffix(Player player) {
         String suffix = "";
 
-        Optional<JsonElement> jsonElement = jsonStorage.getProperty(player, "suffix");
+        Optional<JsonElement> jsonElement = storage.getProperty(player, "suffix");
 
         if (jsonElement.isPresent()) {
             return jsonElement.get().getAsString();
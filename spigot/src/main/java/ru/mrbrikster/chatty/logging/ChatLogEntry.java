@@ -0,0 +1,42 @@
+package ru.mrbrikster.chatty.logging;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.UUID;
+
+/**
+ * Logged chat message, formatted to a log line by {@link ChatLogWriter}
+ */
+@Getter
+public final class ChatLogEntry {
+
+    private final long timestamp;
+    private final String chat;
+    private final int flags;
+    private final String prefix;
+    private final String playerName;
+    private final UUID playerUuid;
+    private final String message;
+
+    /**
+     * @param timestamp time of the message
+     * @param chat chat name
+     * @param flags moderation methods found violations, see {@link HistoryStore#flag(String)}
+     * @param prefix log prefix of the blocking moderation method, or empty string
+     * @param playerName sender name
+     * @param playerUuid sender UUID
+     * @param message logged message
+     */
+    public ChatLogEntry(long timestamp, @NotNull String chat, int flags, @NotNull String prefix,
+                        @NotNull String playerName, @NotNull UUID playerUuid, @NotNull String message) {
+        this.timestamp = timestamp;
+        this.chat = chat;
+        this.flags = flags;
+        this.prefix = prefix;
+        this.playerName = playerName;
+        this.playerUuid = playerUuid;
+        this.message = message;
+    }
+
+}
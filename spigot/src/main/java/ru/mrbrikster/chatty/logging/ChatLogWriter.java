@@ -0,0 +1,322 @@
+package ru.mrbrikster.chatty.logging;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Writes chat log to "logs/yyyy-MM-dd.log" files on a background thread.
+ *
+ * Chat threads only put entries to a bounded queue. The writer thread drains the queue in batches,
+ * formats lines to a buffer and writes the buffer to the file channel when it is full
+ * or the flush interval is elapsed. The file is kept open and closed at midnight,
+ * so the log of the previous day may be compressed.
+ * Entries are also appended to {@link HistoryStore}, if it is enabled.
+ */
+public class ChatLogWriter {
+
+    private static final int BATCH_SIZE = 256;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long DROPPED_REPORT_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private static final DateTimeFormatter FILE_NAME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd'.log'");
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("'['HH:mm:ss'] '");
+
+    // Wakes the writer thread up on close
+    private static final ChatLogEntry CLOSE = new ChatLogEntry(0, "", 0, "", "", new UUID(0, 0), "");
+
+    private final File directory;
+    private final Logger logger;
+    private final long flushIntervalMillis;
+    private final OverflowPolicy overflowPolicy;
+    private final HistoryStore historyStore;
+    private final ZoneId zoneId = ZoneId.systemDefault();
+
+    private final BlockingQueue<ChatLogEntry> queue;
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean closed;
+    private volatile Thread thread;
+
+    // Owned by the writer thread
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder line = new StringBuilder(256);
+    private FileChannel channel;
+    private long nextRotationMillis;
+    private long flushDeadline;
+    private long nextDroppedReport;
+
+    /**
+     * @param directory logs directory
+     * @param logger plugin logger for write errors
+     * @param queueSize maximum number of entries waiting to be written
+     * @param flushIntervalMillis maximum delay between logging and writing of an entry
+     * @param overflowPolicy what to do when the queue is full
+     * @param historyStore searchable history, or null if it is disabled
+     */
+    public ChatLogWriter(@NotNull File directory, @NotNull Logger logger,
+                         int queueSize, long flushIntervalMillis, @NotNull OverflowPolicy overflowPolicy,
+                         @Nullable HistoryStore historyStore) {
+        this.directory = directory;
+        this.logger = logger;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.overflowPolicy = overflowPolicy;
+        this.historyStore = historyStore;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+    }
+
+    /**
+     * Puts entry to the queue, the writer thread is started with the first entry
+     * @param entry logged message
+     */
+    public void write(@NotNull ChatLogEntry entry) {
+        if (closed) {
+            return;
+        }
+
+        if (!started.get() && started.compareAndSet(false, true)) {
+            this.thread = new Thread(this::run, "Chatty Log Writer");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    queue.put(entry);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    dropped.increment();
+                }
+
+                break;
+            case DROP_OLDEST:
+                while (!queue.offer(entry)) {
+                    if (queue.poll() != null) {
+                        dropped.increment();
+                    }
+                }
+
+                break;
+            default:
+                if (!queue.offer(entry)) {
+                    dropped.increment();
+                }
+        }
+    }
+
+    /**
+     * Writes queued entries and closes the file, waits up to 5 seconds
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        this.closed = true;
+
+        if (thread == null) {
+            return;
+        }
+
+        try {
+            queue.put(CLOSE);
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<ChatLogEntry> batch = new ArrayList<>(BATCH_SIZE);
+        this.flushDeadline = System.currentTimeMillis() + flushIntervalMillis;
+
+        try {
+            boolean running = true;
+            while (running) {
+                long timeout = Math.max(1, flushDeadline - System.currentTimeMillis());
+                ChatLogEntry entry = queue.poll(timeout, TimeUnit.MILLISECONDS);
+
+                if (entry != null) {
+                    batch.add(entry);
+                    queue.drainTo(batch, BATCH_SIZE - 1);
+
+                    for (ChatLogEntry batchEntry : batch) {
+                        if (batchEntry == CLOSE) {
+                            running = false;
+                        } else {
+                            append(batchEntry);
+                        }
+                    }
+
+                    batch.clear();
+                }
+
+                if (!running || System.currentTimeMillis() >= flushDeadline) {
+                    flush();
+                    reportDropped();
+
+                    // The next file is opened with the next entry
+                    if (channel != null && System.currentTimeMillis() >= nextRotationMillis) {
+                        closeChannel();
+                    }
+                }
+            }
+        } catch (InterruptedException ignored) {
+        } finally {
+            flush();
+            closeChannel();
+
+            if (historyStore != null) {
+                historyStore.close();
+            }
+        }
+    }
+
+    private void append(ChatLogEntry entry) {
+        if (historyStore != null) {
+            historyStore.append(entry);
+        }
+
+        // Until the next midnight if the file cannot be opened
+        if (entry.getTimestamp() >= nextRotationMillis) {
+            rotate(entry.getTimestamp());
+        }
+
+        ZonedDateTime time = Instant.ofEpochMilli(entry.getTimestamp()).atZone(zoneId);
+
+        line.setLength(0);
+        TIME_FORMATTER.formatTo(time, line);
+        line.append(entry.getPrefix()).append(entry.getPlayerName())
+                .append(" (").append(entry.getPlayerUuid()).append("): ")
+                .append(entry.getMessage()).append(System.lineSeparator());
+
+        byte[] bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+
+        if (bytes.length > buffer.remaining()) {
+            flush();
+        }
+
+        if (bytes.length > buffer.capacity()) {
+            write(ByteBuffer.wrap(bytes));
+        } else {
+            buffer.put(bytes);
+        }
+    }
+
+    private void rotate(long timestamp) {
+        flush();
+        closeChannel();
+
+        LocalDate date = Instant.ofEpochMilli(timestamp).atZone(zoneId).toLocalDate();
+        this.nextRotationMillis = date.plusDays(1).atStartOfDay(zoneId).toInstant().toEpochMilli();
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            logger.warning("Cannot create \"logs\" directory");
+            return;
+        }
+
+        try {
+            this.channel = FileChannel.open(new File(directory, FILE_NAME_FORMATTER.format(date)).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            logger.warning("Cannot open chat log: " + e.getMessage());
+        }
+    }
+
+    private void flush() {
+        this.flushDeadline = System.currentTimeMillis() + flushIntervalMillis;
+
+        if (historyStore != null) {
+            historyStore.flush();
+        }
+
+        if (buffer.position() == 0) {
+            return;
+        }
+
+        buffer.flip();
+        write(buffer);
+        buffer.clear();
+    }
+
+    private void write(ByteBuffer byteBuffer) {
+        // Lines are dropped if the file cannot be opened
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            while (byteBuffer.hasRemaining()) {
+                channel.write(byteBuffer);
+            }
+        } catch (IOException e) {
+            logger.warning("Cannot write chat log: " + e.getMessage());
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        this.channel = null;
+    }
+
+    private void reportDropped() {
+        if (System.currentTimeMillis() < nextDroppedReport) {
+            return;
+        }
+
+        long count = dropped.sumThenReset();
+
+        if (count > 0) {
+            this.nextDroppedReport = System.currentTimeMillis() + DROPPED_REPORT_INTERVAL;
+            logger.warning(count + " chat log lines were not written, logging queue is full");
+        }
+    }
+
+    public enum OverflowPolicy {
+
+        /**
+         * Chat thread waits for a free place in the queue
+         */
+        BLOCK,
+        /**
+         * New entry is dropped
+         */
+        DROP,
+        /**
+         * The oldest queued entry is dropped
+         */
+        DROP_OLDEST
+
+    }
+
+}
@@ -0,0 +1,259 @@
+package ru.mrbrikster.chatty.logging;
+
+import org.bukkit.ChatColor;
+import ru.mrbrikster.chatty.moderation.TextNormalizer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * In-memory index of a history segment, written to ".idx" file when the segment is sealed.
+ *
+ * Index file layout (big-endian):
+ * <pre>
+ * int magic, int version
+ * long minTime, long maxTime, int records, int segmentSize
+ * int samples, samples × (long timestamp, int offset)           every 64th record
+ * int senders, senders × (long msb, long lsb, int start, int count)  sorted by UUID
+ * int tokens, tokens × (int hash, int start, int count)         sorted by hash
+ * senders × (short length, UTF-8 name)                          in the order of sender table
+ * int length, postings                                          varint deltas of record offsets
+ * </pre>
+ */
+final class HistoryIndex {
+
+    static final int MAGIC = 0x43484958;
+    static final int VERSION = 1;
+    static final int TIME_SAMPLE_INTERVAL = 64;
+    static final int MIN_TOKEN_LENGTH = 2;
+
+    private long minTime = Long.MAX_VALUE;
+    private long maxTime = Long.MIN_VALUE;
+    private int records;
+    private int size;
+
+    private long[] sampleTimes = new long[16];
+    private int[] sampleOffsets = new int[16];
+    private int samples;
+
+    private final Map<UUID, Postings> senders = new HashMap<>();
+    private final Map<UUID, String> senderNames = new HashMap<>();
+    private final Map<Integer, Postings> tokens = new HashMap<>();
+
+    /**
+     * Splits message to lower case words of letters and digits, without duplicates.
+     * Messages are normalized as for advertisement checks, so look-alike letters and diacritics are ignored.
+     */
+    static Set<String> tokenize(String message) {
+        String text = TextNormalizer.normalize(ChatColor.stripColor(message),
+                TextNormalizer.Mode.ADVERTISEMENT).getText().toLowerCase();
+
+        Set<String> result = new LinkedHashSet<>();
+        int start = -1;
+
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordCharacter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+
+            if (wordCharacter && start < 0) {
+                start = i;
+            } else if (!wordCharacter && start >= 0) {
+                if (i - start >= MIN_TOKEN_LENGTH) {
+                    result.add(text.substring(start, i));
+                }
+
+                start = -1;
+            }
+        }
+
+        return result;
+    }
+
+    synchronized void add(int offset, int length, ChatLogEntry entry) {
+        long timestamp = entry.getTimestamp();
+
+        if (records % TIME_SAMPLE_INTERVAL == 0) {
+            if (samples == sampleTimes.length) {
+                sampleTimes = Arrays.copyOf(sampleTimes, samples * 2);
+                sampleOffsets = Arrays.copyOf(sampleOffsets, samples * 2);
+            }
+
+            sampleTimes[samples] = timestamp;
+            sampleOffsets[samples++] = offset;
+        }
+
+        minTime = Math.min(minTime, timestamp);
+        maxTime = Math.max(maxTime, timestamp);
+        records++;
+        size = offset + length;
+
+        senders.computeIfAbsent(entry.getPlayerUuid(), uuid -> new Postings()).add(offset);
+        senderNames.put(entry.getPlayerUuid(), entry.getPlayerName());
+
+        for (String token : tokenize(entry.getMessage())) {
+            tokens.computeIfAbsent(token.hashCode(), hash -> new Postings()).add(offset);
+        }
+    }
+
+    synchronized long getMinTime() {
+        return minTime;
+    }
+
+    synchronized long getMaxTime() {
+        return maxTime;
+    }
+
+    synchronized int getRecords() {
+        return records;
+    }
+
+    synchronized Map<UUID, String> getSenderNames() {
+        return new HashMap<>(senderNames);
+    }
+
+    synchronized int[] getSenderPostings(UUID sender) {
+        Postings postings = senders.get(sender);
+        return postings == null ? new int[0] : Arrays.copyOf(postings.offsets, postings.size);
+    }
+
+    synchronized int[] getTokenPostings(int hash) {
+        Postings postings = tokens.get(hash);
+        return postings == null ? new int[0] : Arrays.copyOf(postings.offsets, postings.size);
+    }
+
+    // Offset of the last sample older than "since", records before it are older too
+    synchronized int getFirstOffsetSince(long since) {
+        int low = 0, high = samples - 1, result = 0;
+
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+
+            if (sampleTimes[middle] < since) {
+                result = sampleOffsets[middle];
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+
+        return result;
+    }
+
+    synchronized void write(File file) throws IOException {
+        List<UUID> senderOrder = new ArrayList<>(senders.keySet());
+        senderOrder.sort(Comparator.naturalOrder());
+
+        List<Integer> tokenOrder = new ArrayList<>(tokens.keySet());
+        tokenOrder.sort(Comparator.naturalOrder());
+
+        PostingsWriter postingsWriter = new PostingsWriter();
+
+        int[][] senderRanges = new int[senderOrder.size()][];
+        for (int i = 0; i < senderOrder.size(); i++) {
+            senderRanges[i] = postingsWriter.write(senders.get(senderOrder.get(i)));
+        }
+
+        int[][] tokenRanges = new int[tokenOrder.size()][];
+        for (int i = 0; i < tokenOrder.size(); i++) {
+            tokenRanges[i] = postingsWriter.write(tokens.get(tokenOrder.get(i)));
+        }
+
+        try (OutputStream outputStream = Files.newOutputStream(file.toPath());
+             DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream, 64 * 1024))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(minTime);
+            output.writeLong(maxTime);
+            output.writeInt(records);
+            output.writeInt(size);
+
+            output.writeInt(samples);
+            for (int i = 0; i < samples; i++) {
+                output.writeLong(sampleTimes[i]);
+                output.writeInt(sampleOffsets[i]);
+            }
+
+            output.writeInt(senderOrder.size());
+            for (int i = 0; i < senderOrder.size(); i++) {
+                output.writeLong(senderOrder.get(i).getMostSignificantBits());
+                output.writeLong(senderOrder.get(i).getLeastSignificantBits());
+                output.writeInt(senderRanges[i][0]);
+                output.writeInt(senderRanges[i][1]);
+            }
+
+            output.writeInt(tokenOrder.size());
+            for (int i = 0; i < tokenOrder.size(); i++) {
+                output.writeInt(tokenOrder.get(i));
+                output.writeInt(tokenRanges[i][0]);
+                output.writeInt(tokenRanges[i][1]);
+            }
+
+            for (UUID sender : senderOrder) {
+                byte[] name = HistorySegment.truncate(senderNames.get(sender).getBytes(StandardCharsets.UTF_8));
+                output.writeShort(name.length);
+                output.write(name);
+            }
+
+            output.writeInt(postingsWriter.length);
+            output.write(postingsWriter.bytes, 0, postingsWriter.length);
+        }
+    }
+
+    /**
+     * Ascending offsets of records
+     */
+    private static final class Postings {
+
+        private int[] offsets = new int[4];
+        private int size;
+
+        private void add(int offset) {
+            if (size == offsets.length) {
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+
+            offsets[size++] = offset;
+        }
+
+    }
+
+    private static final class PostingsWriter {
+
+        private byte[] bytes = new byte[64 * 1024];
+        private int length;
+
+        // Returns start position and count
+        private int[] write(Postings postings) {
+            int start = length, previous = 0;
+
+            for (int i = 0; i < postings.size; i++) {
+                int delta = postings.offsets[i] - previous;
+                previous = postings.offsets[i];
+
+                while ((delta & ~0x7F) != 0) {
+                    put((byte) ((delta & 0x7F) | 0x80));
+                    delta >>>= 7;
+                }
+
+                put((byte) delta);
+            }
+
+            return new int[] {start, postings.size};
+        }
+
+        private void put(byte value) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+
+            bytes[length++] = value;
+        }
+
+    }
+
+}
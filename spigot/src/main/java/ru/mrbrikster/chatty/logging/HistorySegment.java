@@ -0,0 +1,513 @@
+package ru.mrbrikster.chatty.logging;
+
+import lombok.Getter;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.logging.Logger;
+
+/**
+ * Append-only file of chat history records, named by the timestamp of its first record.
+ *
+ * Record layout (big-endian):
+ * <pre>
+ * int length of the rest of the record
+ * long timestamp, long sender UUID msb, long sender UUID lsb, byte flags
+ * short length, UTF-8 chat; short length, UTF-8 sender name; short length, UTF-8 message
+ * </pre>
+ * Records are addressed by their offsets in the file.
+ */
+abstract class HistorySegment {
+
+    static final String SEGMENT_EXTENSION = ".seg";
+    static final String INDEX_EXTENSION = ".idx";
+
+    private static final int HEADER_SIZE = 4 + 8 + 8 + 8 + 1;
+    private static final int MAX_STRING_LENGTH = 0xFFFF;
+
+    @Getter private final File file;
+    @Getter private final long id;
+
+    private HistorySegment(File file, long id) {
+        this.file = file;
+        this.id = id;
+    }
+
+    abstract long getMinTime();
+
+    abstract long getMaxTime();
+
+    /**
+     * Returns length of records available for reading
+     */
+    abstract int getSize();
+
+    abstract Map<UUID, String> getSenderNames();
+
+    /**
+     * Returns ascending offsets of records of the sender
+     */
+    abstract int[] getSenderPostings(UUID sender);
+
+    /**
+     * Returns ascending offsets of records which may contain a token with the hash
+     */
+    abstract int[] getTokenPostings(int hash);
+
+    /**
+     * Returns offset before which all records are older than the time
+     */
+    abstract int getFirstOffsetSince(long since);
+
+    abstract ChatLogEntry read(int offset) throws IOException;
+
+    abstract void close();
+
+    File getIndexFile() {
+        return indexFile(file);
+    }
+
+    static File indexFile(File segmentFile) {
+        String name = segmentFile.getName();
+        return new File(segmentFile.getParentFile(),
+                name.substring(0, name.length() - SEGMENT_EXTENSION.length()) + INDEX_EXTENSION);
+    }
+
+    static byte[] truncate(byte[] bytes) {
+        return bytes.length > MAX_STRING_LENGTH ? Arrays.copyOf(bytes, MAX_STRING_LENGTH) : bytes;
+    }
+
+    static byte[] encode(ChatLogEntry entry) {
+        byte[] chat = truncate(entry.getChat().getBytes(StandardCharsets.UTF_8));
+        byte[] name = truncate(entry.getPlayerName().getBytes(StandardCharsets.UTF_8));
+        byte[] message = truncate(entry.getMessage().getBytes(StandardCharsets.UTF_8));
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 6 + chat.length + name.length + message.length);
+        buffer.putInt(buffer.capacity() - 4);
+        buffer.putLong(entry.getTimestamp());
+        buffer.putLong(entry.getPlayerUuid().getMostSignificantBits());
+        buffer.putLong(entry.getPlayerUuid().getLeastSignificantBits());
+        buffer.put((byte) entry.getFlags());
+        buffer.putShort((short) chat.length).put(chat);
+        buffer.putShort((short) name.length).put(name);
+        buffer.putShort((short) message.length).put(message);
+
+        return buffer.array();
+    }
+
+    // Buffer is positioned at the record start
+    private static ChatLogEntry decode(ByteBuffer buffer) {
+        buffer.getInt();
+        long timestamp = buffer.getLong();
+        UUID sender = new UUID(buffer.getLong(), buffer.getLong());
+        int flags = buffer.get() & 0xFF;
+        String chat = getString(buffer);
+        String name = getString(buffer);
+        String message = getString(buffer);
+
+        return new ChatLogEntry(timestamp, chat, flags, "", name, sender, message);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds index of a segment without it, e.g. after a crash. Incomplete record at the end is cut off.
+     * @return index, or null if the segment has no records
+     */
+    static HistoryIndex rebuildIndex(File segmentFile) throws IOException {
+        HistoryIndex index = new HistoryIndex();
+        long length = segmentFile.length();
+        int offset = 0;
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(segmentFile.toPath()), 64 * 1024))) {
+            while (offset + 4 <= length) {
+                int recordLength = input.readInt();
+
+                if (recordLength < HEADER_SIZE - 4 || offset + 4L + recordLength > length) {
+                    break;
+                }
+
+                byte[] record = new byte[4 + recordLength];
+                ByteBuffer.wrap(record).putInt(recordLength);
+                input.readFully(record, 4, recordLength);
+
+                index.add(offset, record.length, decode(ByteBuffer.wrap(record)));
+                offset += record.length;
+            }
+        }
+
+        if (offset < length) {
+            try (FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(offset);
+            }
+        }
+
+        return index.getRecords() == 0 ? null : index;
+    }
+
+    /**
+     * Segment being written by the log writer thread. Records become searchable when they are flushed.
+     */
+    static final class Active extends HistorySegment {
+
+        private static final int BUFFER_SIZE = 64 * 1024;
+
+        private final Logger logger;
+        private final FileChannel channel;
+        private final HistoryIndex index = new HistoryIndex();
+
+        // Owned by the writer thread
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final List<ChatLogEntry> pendingEntries = new ArrayList<>();
+        private final List<int[]> pendingRecords = new ArrayList<>();
+        private int size;
+
+        private volatile int committedSize;
+
+        Active(File file, long id, Logger logger) throws IOException {
+            super(file, id);
+
+            this.logger = logger;
+            this.channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        void append(ChatLogEntry entry) {
+            byte[] record = encode(entry);
+
+            if (record.length > buffer.remaining()) {
+                flush();
+            }
+
+            pendingEntries.add(entry);
+            pendingRecords.add(new int[] {size, record.length});
+            size += record.length;
+
+            if (record.length > buffer.capacity()) {
+                write(ByteBuffer.wrap(record), size - record.length);
+            } else {
+                buffer.put(record);
+            }
+        }
+
+        void flush() {
+            if (buffer.position() != 0) {
+                buffer.flip();
+                write(buffer, size - buffer.remaining());
+                buffer.clear();
+            }
+
+            if (size == committedSize) {
+                return;
+            }
+
+            for (int i = 0; i < pendingEntries.size(); i++) {
+                int[] record = pendingRecords.get(i);
+                index.add(record[0], record[1], pendingEntries.get(i));
+            }
+
+            pendingEntries.clear();
+            pendingRecords.clear();
+            this.committedSize = size;
+        }
+
+        // Pending records are dropped if they cannot be written, next records overwrite them
+        private void write(ByteBuffer byteBuffer, long position) {
+            try {
+                while (byteBuffer.hasRemaining()) {
+                    position += channel.write(byteBuffer, position);
+                }
+            } catch (IOException e) {
+                logger.warning("Cannot write chat history: " + e.getMessage());
+
+                byteBuffer.position(byteBuffer.limit());
+                pendingEntries.clear();
+                pendingRecords.clear();
+                this.size = committedSize;
+            }
+        }
+
+        int getWrittenSize() {
+            return size;
+        }
+
+        /**
+         * Flushes records and writes the index file
+         */
+        void seal() throws IOException {
+            flush();
+            channel.force(false);
+            index.write(getIndexFile());
+        }
+
+        @Override
+        long getMinTime() {
+            return index.getMinTime();
+        }
+
+        @Override
+        long getMaxTime() {
+            return index.getMaxTime();
+        }
+
+        @Override
+        int getSize() {
+            return committedSize;
+        }
+
+        @Override
+        Map<UUID, String> getSenderNames() {
+            return index.getSenderNames();
+        }
+
+        @Override
+        int[] getSenderPostings(UUID sender) {
+            return index.getSenderPostings(sender);
+        }
+
+        @Override
+        int[] getTokenPostings(int hash) {
+            return index.getTokenPostings(hash);
+        }
+
+        @Override
+        int getFirstOffsetSince(long since) {
+            return index.getFirstOffsetSince(since);
+        }
+
+        @Override
+        ChatLogEntry read(int offset) throws IOException {
+            ByteBuffer length = ByteBuffer.allocate(4);
+            readFully(length, offset);
+
+            ByteBuffer record = ByteBuffer.allocate(4 + length.getInt(0));
+            readFully(record, offset);
+            record.flip();
+
+            return decode(record);
+        }
+
+        private void readFully(ByteBuffer byteBuffer, long position) throws IOException {
+            while (byteBuffer.hasRemaining()) {
+                int read = channel.read(byteBuffer, position + byteBuffer.position());
+
+                if (read < 0) {
+                    throw new EOFException();
+                }
+            }
+        }
+
+        @Override
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+    }
+
+    /**
+     * Complete segment, both segment and index files are memory-mapped
+     */
+    static final class Sealed extends HistorySegment {
+
+        private static final int SAMPLE_SIZE = 8 + 4;
+        private static final int SENDER_SIZE = 8 + 8 + 4 + 4;
+        private static final int TOKEN_SIZE = 4 + 4 + 4;
+
+        private final ByteBuffer data;
+        private final ByteBuffer index;
+
+        private final long minTime;
+        private final long maxTime;
+        private final int size;
+        private final Map<UUID, String> senderNames;
+
+        private final int samplesStart, samples;
+        private final int sendersStart, senders;
+        private final int tokensStart, tokens;
+        private final int postingsStart;
+
+        Sealed(File file, long id) throws IOException {
+            super(file, id);
+
+            this.index = map(getIndexFile(), -1);
+
+            if (index.getInt(0) != HistoryIndex.MAGIC || index.getInt(4) != HistoryIndex.VERSION) {
+                throw new IOException("Unknown index format of " + getIndexFile().getName());
+            }
+
+            this.minTime = index.getLong(8);
+            this.maxTime = index.getLong(16);
+            this.size = index.getInt(28);
+
+            int position = 32;
+            this.samples = index.getInt(position);
+            this.samplesStart = position + 4;
+
+            position = samplesStart + samples * SAMPLE_SIZE;
+            this.senders = index.getInt(position);
+            this.sendersStart = position + 4;
+
+            position = sendersStart + senders * SENDER_SIZE;
+            this.tokens = index.getInt(position);
+            this.tokensStart = position + 4;
+
+            ByteBuffer names = index.duplicate();
+            names.position(tokensStart + tokens * TOKEN_SIZE);
+
+            this.senderNames = new HashMap<>();
+            for (int i = 0; i < senders; i++) {
+                int sender = sendersStart + i * SENDER_SIZE;
+                senderNames.put(new UUID(index.getLong(sender), index.getLong(sender + 8)), getString(names));
+            }
+
+            this.postingsStart = names.position() + 4;
+            this.data = map(file, size);
+        }
+
+        private static ByteBuffer map(File file, long size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                if (size > channel.size()) {
+                    throw new IOException(file.getName() + " is shorter than its index");
+                }
+
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, size < 0 ? channel.size() : size);
+            }
+        }
+
+        @Override
+        long getMinTime() {
+            return minTime;
+        }
+
+        @Override
+        long getMaxTime() {
+            return maxTime;
+        }
+
+        @Override
+        int getSize() {
+            return size;
+        }
+
+        @Override
+        Map<UUID, String> getSenderNames() {
+            return senderNames;
+        }
+
+        @Override
+        int[] getSenderPostings(UUID sender) {
+            long msb = sender.getMostSignificantBits(), lsb = sender.getLeastSignificantBits();
+            int low = 0, high = senders - 1;
+
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int position = sendersStart + middle * SENDER_SIZE;
+
+                int compare = Long.compare(index.getLong(position), msb);
+                if (compare == 0) {
+                    compare = Long.compare(index.getLong(position + 8), lsb);
+                }
+
+                if (compare < 0) {
+                    low = middle + 1;
+                } else if (compare > 0) {
+                    high = middle - 1;
+                } else {
+                    return readPostings(index.getInt(position + 16), index.getInt(position + 20));
+                }
+            }
+
+            return new int[0];
+        }
+
+        @Override
+        int[] getTokenPostings(int hash) {
+            int low = 0, high = tokens - 1;
+
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int position = tokensStart + middle * TOKEN_SIZE;
+                int value = index.getInt(position);
+
+                if (value < hash) {
+                    low = middle + 1;
+                } else if (value > hash) {
+                    high = middle - 1;
+                } else {
+                    return readPostings(index.getInt(position + 4), index.getInt(position + 8));
+                }
+            }
+
+            return new int[0];
+        }
+
+        private int[] readPostings(int start, int count) {
+            int[] postings = new int[count];
+            int position = postingsStart + start, previous = 0;
+
+            for (int i = 0; i < count; i++) {
+                int delta = 0, shift = 0;
+                byte value;
+
+                do {
+                    value = index.get(position++);
+                    delta |= (value & 0x7F) << shift;
+                    shift += 7;
+                } while ((value & 0x80) != 0);
+
+                previous += delta;
+                postings[i] = previous;
+            }
+
+            return postings;
+        }
+
+        @Override
+        int getFirstOffsetSince(long since) {
+            int low = 0, high = samples - 1, result = 0;
+
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int position = samplesStart + middle * SAMPLE_SIZE;
+
+                if (index.getLong(position) < since) {
+                    result = index.getInt(position + 8);
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            return result;
+        }
+
+        @Override
+        ChatLogEntry read(int offset) {
+            ByteBuffer record = data.duplicate();
+            record.position(offset);
+
+            return decode(record);
+        }
+
+        @Override
+        void close() {
+            // Mapped buffers are unmapped by the garbage collector
+        }
+
+    }
+
+}
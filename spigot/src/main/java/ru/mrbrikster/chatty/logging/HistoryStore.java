@@ -0,0 +1,363 @@
+package ru.mrbrikster.chatty.logging;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Searchable chat history in "history" directory.
+ *
+ * Messages are appended by the log writer thread to segment files, a new segment is started
+ * every day or when the segment reaches 32 MB. Each segment has sparse time index, index of senders
+ * and inverted index of message words, so a search reads only matching records.
+ * Complete segments are memory-mapped, their indexes are stored in ".idx" files.
+ */
+public class HistoryStore {
+
+    private static final String[] FLAGS = {"SWEARS", "CAPS", "ADVERTISEMENT", "REPEAT", "BOTWAVE"};
+    private static final int MAX_SEGMENT_SIZE = 32 * 1024 * 1024;
+
+    private final File directory;
+    private final Logger logger;
+    private final int maxAgeDays;
+    private final ZoneId zoneId = ZoneId.systemDefault();
+
+    // Oldest segments first, replaced on every change by the writer thread
+    private volatile List<HistorySegment> segments = Collections.emptyList();
+
+    // Lower case sender names to UUIDs
+    private final Map<String, UUID> senders = new ConcurrentHashMap<>();
+
+    // Owned by the writer thread
+    private HistorySegment.Active active;
+    private long nextRollMillis;
+
+    /**
+     * @param directory history directory
+     * @param logger plugin logger for errors
+     * @param maxAgeDays segments older than this number of days are deleted, 0 to keep history forever
+     */
+    public HistoryStore(@NotNull File directory, @NotNull Logger logger, int maxAgeDays) {
+        this.directory = directory;
+        this.logger = logger;
+        this.maxAgeDays = maxAgeDays;
+
+        if (!directory.exists() && !directory.mkdirs()) {
+            logger.warning("Cannot create \"history\" directory");
+            return;
+        }
+
+        load();
+        deleteExpired();
+    }
+
+    /**
+     * Returns flag of a moderation method
+     * @param logPrefix log prefix of the moderation method
+     * @return flag bit, or 0 if the method is unknown
+     */
+    public static int flag(@NotNull String logPrefix) {
+        for (int i = 0; i < FLAGS.length; i++) {
+            if (FLAGS[i].equals(logPrefix)) {
+                return 1 << i;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Returns log prefixes of moderation methods
+     * @param flags flags of a history entry
+     * @return log prefixes
+     */
+    @NotNull
+    public static List<String> getFlagNames(int flags) {
+        List<String> names = new ArrayList<>();
+
+        for (int i = 0; i < FLAGS.length; i++) {
+            if ((flags & 1 << i) != 0) {
+                names.add(FLAGS[i]);
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Returns UUID of a player who have written messages to the history
+     * @param name player name, ignoring case
+     * @return UUID of the last player with the name
+     */
+    @NotNull
+    public Optional<UUID> findSender(@NotNull String name) {
+        return Optional.ofNullable(senders.get(name.toLowerCase()));
+    }
+
+    /**
+     * Finds messages, the newest first. May be called from any thread.
+     * @param sender UUID of the sender, or null for any sender
+     * @param text words which should be contained in messages, or null for any message
+     * @param since the oldest message time in milliseconds
+     * @param page zero-based page number
+     * @param pageSize number of messages on a page
+     * @return page of found messages
+     */
+    @NotNull
+    public Page search(@Nullable UUID sender, @Nullable String text, long since, int page, int pageSize) {
+        Set<String> tokens = text == null ? Collections.emptySet() : HistoryIndex.tokenize(text);
+
+        if (sender == null && tokens.isEmpty()) {
+            return new Page(Collections.emptyList(), true);
+        }
+
+        int skip = page * pageSize;
+        int limit = skip + pageSize + 1;
+
+        List<ChatLogEntry> found = new ArrayList<>();
+        List<HistorySegment> snapshot = segments;
+
+        for (int i = snapshot.size() - 1; i >= 0 && found.size() < limit; i--) {
+            HistorySegment segment = snapshot.get(i);
+
+            if (segment.getSize() == 0 || segment.getMaxTime() < since) {
+                continue;
+            }
+
+            int[] candidates = sender == null ? null : segment.getSenderPostings(sender);
+            for (String token : tokens) {
+                if (candidates != null && candidates.length == 0) {
+                    break;
+                }
+
+                int[] postings = segment.getTokenPostings(token.hashCode());
+                candidates = candidates == null ? postings : intersect(candidates, postings);
+            }
+
+            int firstOffset = segment.getFirstOffsetSince(since);
+            int size = segment.getSize();
+
+            try {
+                for (int j = candidates.length - 1; j >= 0 && found.size() < limit; j--) {
+                    int offset = candidates[j];
+
+                    if (offset < firstOffset) {
+                        break;
+                    }
+
+                    // Written after the search has started
+                    if (offset >= size) {
+                        continue;
+                    }
+
+                    ChatLogEntry entry = segment.read(offset);
+
+                    // Tokens are indexed by hashes
+                    if (entry.getTimestamp() >= since
+                            && (tokens.isEmpty() || HistoryIndex.tokenize(entry.getMessage()).containsAll(tokens))) {
+                        found.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                // Segment was sealed and closed by the writer thread
+            }
+        }
+
+        return new Page(found.subList(Math.min(skip, found.size()), Math.min(skip + pageSize, found.size())),
+                found.size() <= skip + pageSize);
+    }
+
+    private static int[] intersect(int[] first, int[] second) {
+        int[] result = new int[Math.min(first.length, second.length)];
+        int i = 0, j = 0, size = 0;
+
+        while (i < first.length && j < second.length) {
+            if (first[i] < second[j]) {
+                i++;
+            } else if (first[i] > second[j]) {
+                j++;
+            } else {
+                result[size++] = first[i];
+                i++;
+                j++;
+            }
+        }
+
+        return Arrays.copyOf(result, size);
+    }
+
+    void append(ChatLogEntry entry) {
+        if (entry.getTimestamp() >= nextRollMillis
+                || active != null && active.getWrittenSize() >= MAX_SEGMENT_SIZE) {
+            roll(entry.getTimestamp());
+        }
+
+        // Until the next midnight if the segment cannot be created
+        if (active != null) {
+            active.append(entry);
+            senders.put(entry.getPlayerName().toLowerCase(), entry.getPlayerUuid());
+        }
+    }
+
+    void flush() {
+        if (active != null) {
+            active.flush();
+        }
+    }
+
+    void close() {
+        seal();
+    }
+
+    private void roll(long timestamp) {
+        seal();
+        deleteExpired();
+
+        this.nextRollMillis = Instant.ofEpochMilli(timestamp).atZone(zoneId).toLocalDate()
+                .plusDays(1).atStartOfDay(zoneId).toInstant().toEpochMilli();
+
+        long id = timestamp;
+        while (new File(directory, id + HistorySegment.SEGMENT_EXTENSION).exists()) {
+            id++;
+        }
+
+        try {
+            this.active = new HistorySegment.Active(new File(directory, id + HistorySegment.SEGMENT_EXTENSION), id, logger);
+        } catch (IOException e) {
+            logger.warning("Cannot create chat history segment: " + e.getMessage());
+            return;
+        }
+
+        List<HistorySegment> segments = new ArrayList<>(this.segments);
+        segments.add(active);
+        this.segments = Collections.unmodifiableList(segments);
+    }
+
+    private void seal() {
+        if (active == null) {
+            return;
+        }
+
+        HistorySegment.Active active = this.active;
+        this.active = null;
+
+        List<HistorySegment> segments = new ArrayList<>(this.segments);
+        int index = segments.indexOf(active);
+
+        try {
+            active.seal();
+            segments.set(index, new HistorySegment.Sealed(active.getFile(), active.getId()));
+        } catch (IOException e) {
+            // Index will be rebuilt on the next start
+            logger.warning("Cannot write chat history index: " + e.getMessage());
+            segments.remove(index);
+        }
+
+        this.segments = Collections.unmodifiableList(segments);
+        active.close();
+    }
+
+    private void load() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(HistorySegment.SEGMENT_EXTENSION));
+
+        if (files == null) {
+            return;
+        }
+
+        TreeMap<Long, File> segmentFiles = new TreeMap<>();
+        for (File file : files) {
+            try {
+                segmentFiles.put(Long.parseLong(file.getName().substring(0,
+                        file.getName().length() - HistorySegment.SEGMENT_EXTENSION.length())), file);
+            } catch (NumberFormatException ignored) {
+            }
+        }
+
+        List<HistorySegment> segments = new ArrayList<>();
+        for (Map.Entry<Long, File> entry : segmentFiles.entrySet()) {
+            HistorySegment segment = open(entry.getValue(), entry.getKey());
+
+            if (segment != null) {
+                segments.add(segment);
+                segment.getSenderNames().forEach((uuid, name) -> senders.put(name.toLowerCase(), uuid));
+            }
+        }
+
+        this.segments = Collections.unmodifiableList(segments);
+    }
+
+    private HistorySegment open(File file, long id) {
+        File indexFile = HistorySegment.indexFile(file);
+
+        if (indexFile.exists()) {
+            try {
+                return new HistorySegment.Sealed(file, id);
+            } catch (IOException | RuntimeException e) {
+                logger.warning("Cannot read chat history index " + indexFile.getName() + ", rebuilding it");
+            }
+        }
+
+        try {
+            HistoryIndex index = HistorySegment.rebuildIndex(file);
+
+            if (index == null) {
+                delete(file);
+                return null;
+            }
+
+            index.write(indexFile);
+            return new HistorySegment.Sealed(file, id);
+        } catch (IOException | RuntimeException e) {
+            logger.warning("Cannot read chat history segment " + file.getName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void deleteExpired() {
+        if (maxAgeDays <= 0) {
+            return;
+        }
+
+        long minTime = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxAgeDays);
+        List<HistorySegment> segments = new ArrayList<>(this.segments);
+
+        if (segments.removeIf(segment -> segment != active && segment.getMaxTime() < minTime
+                && delete(segment.getFile()))) {
+            this.segments = Collections.unmodifiableList(segments);
+        }
+    }
+
+    private boolean delete(File segmentFile) {
+        File indexFile = HistorySegment.indexFile(segmentFile);
+
+        if (indexFile.exists() && !indexFile.delete() || !segmentFile.delete()) {
+            logger.warning("Cannot delete old chat history segment " + segmentFile.getName());
+            return false;
+        }
+
+        return true;
+    }
+
+    @Getter
+    public static final class Page {
+
+        private final List<ChatLogEntry> entries;
+        private final boolean lastPage;
+
+        private Page(List<ChatLogEntry> entries, boolean lastPage) {
+            this.entries = entries;
+            this.lastPage = lastPage;
+        }
+
+    }
+
+}
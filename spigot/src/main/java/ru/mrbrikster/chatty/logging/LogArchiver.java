@@ -0,0 +1,206 @@
+package ru.mrbrikster.chatty.logging;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses chat logs of previous days to "yyyy-MM-dd.log.gz" and deletes old logs.
+ *
+ * Logs are compressed by streaming, so a log is never loaded to memory. Archives may be read
+ * with any gzip tool, e.g. "zcat" or "zgrep". Logs older than the maximum age are deleted,
+ * then the oldest logs are deleted until logs take no more than the maximum size.
+ * Log of the current day is never touched.
+ *
+ * A log is renamed to "yyyy-MM-dd.log.compressing" before it is compressed, and deleted after that,
+ * so it is never compressed twice if it cannot be deleted.
+ */
+public class LogArchiver implements Runnable {
+
+    private static final Pattern LOG_FILE_PATTERN = Pattern.compile("(\\d{4}-\\d{2}-\\d{2})\\.log(\\.gz|\\.compressing)?");
+    private static final String WORKING_EXTENSION = ".compressing";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Log of the previous day may still get lines written right after midnight
+    private static final long MODIFICATION_DELAY = TimeUnit.MINUTES.toMillis(5);
+
+    private final File directory;
+    private final Logger logger;
+    private final boolean compress;
+    private final int maxAgeDays;
+    private final long maxSizeBytes;
+
+    /**
+     * @param directory logs directory
+     * @param logger plugin logger for errors
+     * @param compress whether logs of previous days are compressed
+     * @param maxAgeDays logs older than this number of days are deleted, 0 to keep logs forever
+     * @param maxSizeBytes maximum total size of logs, 0 for no limit
+     */
+    public LogArchiver(@NotNull File directory, @NotNull Logger logger,
+                       boolean compress, int maxAgeDays, long maxSizeBytes) {
+        this.directory = directory;
+        this.logger = logger;
+        this.compress = compress;
+        this.maxAgeDays = maxAgeDays;
+        this.maxSizeBytes = maxSizeBytes;
+    }
+
+    @Override
+    public void run() {
+        if (!directory.isDirectory()) {
+            return;
+        }
+
+        LocalDate today = LocalDate.now();
+
+        if (compress) {
+            List<LogFile> logFiles = listLogFiles();
+
+            // Logs left after a failed or interrupted compression go first, so they are not overwritten
+            logFiles.sort(Comparator.comparing((LogFile logFile) -> !logFile.working));
+
+            for (LogFile logFile : logFiles) {
+                if (!logFile.compressed && logFile.date.isBefore(today)
+                        && logFile.file.lastModified() < System.currentTimeMillis() - MODIFICATION_DELAY) {
+                    compress(logFile);
+                }
+            }
+        }
+
+        List<LogFile> logFiles = listLogFiles();
+
+        // The newest logs first
+        logFiles.sort(Comparator.comparing((LogFile logFile) -> logFile.date).reversed());
+
+        long totalSize = 0;
+        for (LogFile logFile : logFiles) {
+            totalSize += logFile.file.length();
+
+            if (!logFile.date.isBefore(today)) {
+                continue;
+            }
+
+            boolean expired = maxAgeDays > 0 && logFile.date.isBefore(today.minusDays(maxAgeDays));
+            boolean oversized = maxSizeBytes > 0 && totalSize > maxSizeBytes;
+
+            if (expired || oversized) {
+                totalSize -= logFile.file.length();
+
+                if (!logFile.file.delete()) {
+                    logger.warning("Cannot delete old chat log " + logFile.file.getName());
+                }
+            }
+        }
+    }
+
+    private void compress(LogFile logFile) {
+        File workingFile = logFile.working ? logFile.file : new File(directory, logFile.file.getName() + WORKING_EXTENSION);
+
+        if (!logFile.working && (workingFile.exists() || !logFile.file.renameTo(workingFile))) {
+            logger.warning("Cannot compress chat log " + logFile.file.getName() + ": file cannot be renamed");
+            return;
+        }
+
+        File archive = new File(directory, logFile.date + ".log.gz");
+
+        // Left log is already in the archive if the archive was written after the last line of the log
+        if (!logFile.working || !archive.exists() || archive.lastModified() <= workingFile.lastModified()) {
+            if (!compress(workingFile, archive)) {
+                return;
+            }
+        }
+
+        if (!workingFile.delete()) {
+            logger.warning("Cannot delete compressed chat log " + workingFile.getName());
+        }
+    }
+
+    private boolean compress(File logFile, File archive) {
+        File temporaryFile = new File(directory, archive.getName() + ".tmp");
+
+        try {
+            try (OutputStream outputStream = Files.newOutputStream(temporaryFile.toPath())) {
+                if (archive.exists()) {
+                    // Lines written after the previous compression, gzip readers read concatenated archives as one
+                    Files.copy(archive.toPath(), outputStream);
+                }
+
+                try (InputStream inputStream = Files.newInputStream(logFile.toPath());
+                     OutputStream gzipOutputStream = new GZIPOutputStream(outputStream, BUFFER_SIZE)) {
+                    byte[] buffer = new byte[BUFFER_SIZE];
+
+                    int read;
+                    while ((read = inputStream.read(buffer)) != -1) {
+                        gzipOutputStream.write(buffer, 0, read);
+                    }
+                }
+            }
+
+            // Archive is replaced as a whole, so it never contains a part of the log
+            Files.move(temporaryFile.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            logger.warning("Cannot compress chat log " + logFile.getName() + ": " + e.getMessage());
+            temporaryFile.delete();
+            return false;
+        }
+    }
+
+    private List<LogFile> listLogFiles() {
+        List<LogFile> logFiles = new ArrayList<>();
+        File[] files = directory.listFiles();
+
+        if (files == null) {
+            return logFiles;
+        }
+
+        for (File file : files) {
+            Matcher matcher = LOG_FILE_PATTERN.matcher(file.getName());
+
+            if (!matcher.matches()) {
+                continue;
+            }
+
+            try {
+                logFiles.add(new LogFile(file, LocalDate.parse(matcher.group(1)),
+                        ".gz".equals(matcher.group(2)), WORKING_EXTENSION.equals(matcher.group(2))));
+            } catch (DateTimeParseException ignored) {
+            }
+        }
+
+        return logFiles;
+    }
+
+    private static final class LogFile {
+
+        private final File file;
+        private final LocalDate date;
+        private final boolean compressed;
+        private final boolean working;
+
+        private LogFile(File file, LocalDate date, boolean compressed, boolean working) {
+            this.file = file;
+            this.date = date;
+            this.compressed = compressed;
+            this.working = working;
+        }
+
+    }
+
+}
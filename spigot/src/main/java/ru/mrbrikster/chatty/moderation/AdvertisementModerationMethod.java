@@ -1,10 +1,12 @@
 package ru.mrbrikster.chatty.moderation;
 
-import lombok.Getter;
 import ru.mrbrikster.baseplugin.config.ConfigurationNode;
 import ru.mrbrikster.chatty.util.TextUtil;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -15,25 +17,21 @@ public class AdvertisementModerationMethod extends ModerationMethod {
     private String editedMessage;
     private boolean checked = false, result = false;
 
-    private final List<String> whitelist;
+    private final Rule rule;
 
-    private final Pattern ipPattern;
-    private final Pattern webPattern;
+    AdvertisementModerationMethod(Rule rule, String message) {
+        super(message);
 
-    @Getter private final String replacement;
-    @Getter private final boolean useBlock;
+        this.rule = rule;
+    }
 
-    AdvertisementModerationMethod(ConfigurationNode configurationNode, String message) {
-        super(message);
+    public String getReplacement() {
+        return rule.replacement;
+    }
 
-        this.whitelist = configurationNode.getNode("whitelist")
-                .getAsStringList().stream().map(String::toLowerCase).collect(Collectors.toList());
-        this.ipPattern = Pattern.compile(configurationNode.getNode("patterns.ip")
-                .getAsString("(?:\\d{1,3}[.,\\-:;\\/()=?}+ ]{1,4}){3}\\d{1,3}"));
-        this.webPattern = Pattern.compile(configurationNode.getNode("patterns.web")
-                .getAsString("[-a-zA-Zа-яА-Я0-9@:%_\\+.~#?&//=]{2,256}\\.[a-z]{2,4}\\b(\\/[-a-zA-Zа-яА-Я0-9@:%_\\+~#?&//=]*)?"));
-        this.replacement = TextUtil.stylish(configurationNode.getNode("replacement").getAsString("<ads>"));
-        this.useBlock = configurationNode.getNode("block").getAsBoolean(true);
+    @Override
+    public boolean isUseBlock() {
+        return rule.useBlock;
     }
 
     @Override
@@ -51,17 +49,43 @@ public class AdvertisementModerationMethod extends ModerationMethod {
             return this.result;
         }
 
-        if (this.editedMessage == null) {
-            this.editedMessage = this.message;
+        // Patterns are matched against normalized message, so "ＥＸＡＭＰＬＥ.СОМ"
+        // with fullwidth and Cyrillic letters is found as "example.com"
+        TextNormalizer.Normalized normalized = getNormalized(TextNormalizer.Mode.ADVERTISEMENT);
+        List<int[]> ads = new ArrayList<>();
+
+        if (rule.scanner) {
+            AdvertisementScanner.scan(normalized.getText(), rule.whitelist, ads);
+        } else {
+            match(normalized.getText(), rule.ipPattern, string -> string, ads);
+            match(normalized.getText(), rule.webPattern, string -> string
+                    .replace("www.", "")
+                    .replace("http://", "")
+                    .replace("https://", ""), ads);
         }
 
-        this.result = match(ipPattern, string -> string);
-        this.result = match(webPattern, string -> string
-                .replaceAll(Pattern.quote("www."), "")
-                .replaceAll(Pattern.quote("http://"), "")
-                .replaceAll(Pattern.quote("https://"), "")
-        ) || this.result;
+        ads.sort(Comparator.comparingInt(ad -> ad[0]));
 
+        StringBuilder builder = new StringBuilder();
+        int prevIndex = 0;
+        for (int[] ad : ads) {
+            int start = normalized.originalStart(ad[0]);
+            int end = normalized.originalEnd(ad[1]);
+
+            if (start < prevIndex) {
+                // Overlaps with previous advertisement, that is already replaced
+                prevIndex = Math.max(prevIndex, end);
+                continue;
+            }
+
+            builder.append(this.message, prevIndex, start).append(rule.replacement);
+            prevIndex = end;
+        }
+
+        builder.append(this.message, prevIndex, this.message.length());
+
+        this.editedMessage = builder.toString();
+        this.result = !ads.isEmpty();
         this.checked = true;
 
         return this.result;
@@ -77,35 +101,46 @@ public class AdvertisementModerationMethod extends ModerationMethod {
         return "advertisement-found";
     }
 
-    private boolean match(Pattern pattern, Function<String, String> modifyFunction) {
-        Matcher matcher = pattern.matcher(this.editedMessage);
-
-        int prevIndex = 0;
-        StringBuilder builder = new StringBuilder();
+    private void match(String text, Pattern pattern, Function<String, String> modifyFunction, List<int[]> ads) {
+        Matcher matcher = pattern.matcher(text);
 
-        boolean containsAds = false;
         while (matcher.find()) {
-            String group = matcher.group();
-
-            builder.append(this.editedMessage, prevIndex, matcher.start());
-            prevIndex = matcher.end();
-
-            String ad = modifyFunction.apply(group.trim().toLowerCase());
+            String ad = modifyFunction.apply(matcher.group().trim());
 
-            if (this.whitelist.contains(ad)) {
-                builder.append(this.editedMessage, matcher.start(), matcher.end());
-            } else {
-                containsAds = true;
-                builder.append(this.replacement);
+            if (!rule.whitelist.contains(ad)) {
+                ads.add(new int[] {matcher.start(), matcher.end()});
             }
         }
+    }
 
-        if (prevIndex < this.editedMessage.length()) {
-            builder.append(this.editedMessage, prevIndex, this.editedMessage.length());
+    /**
+     * Compiled advertisement moderation settings, shared by all messages
+     */
+    static final class Rule {
+
+        private final boolean scanner;
+        private final Set<String> whitelist;
+        private final Pattern ipPattern;
+        private final Pattern webPattern;
+        private final String replacement;
+        private final boolean useBlock;
+
+        Rule(ConfigurationNode configurationNode) {
+            this.scanner = !configurationNode.getNode("mode").getAsString("scanner").equalsIgnoreCase("regex");
+            this.whitelist = configurationNode.getNode("whitelist")
+                    .getAsStringList().stream()
+                    .map(site -> TextNormalizer.normalize(site, TextNormalizer.Mode.ADVERTISEMENT).getText())
+                    .collect(Collectors.toSet());
+
+            // Patterns are compiled only for "regex" mode
+            this.ipPattern = scanner ? null : Pattern.compile(configurationNode.getNode("patterns.ip")
+                    .getAsString("(?:\\d{1,3}[.,\\-:;\\/()=?}+ ]{1,4}){3}\\d{1,3}"));
+            this.webPattern = scanner ? null : Pattern.compile(configurationNode.getNode("patterns.web")
+                    .getAsString("[-a-zA-Zа-яА-Я0-9@:%_\\+.~#?&//=]{2,256}\\.[a-z]{2,4}\\b(\\/[-a-zA-Zа-яА-Я0-9@:%_\\+~#?&//=]*)?"));
+            this.replacement = TextUtil.stylish(configurationNode.getNode("replacement").getAsString("<ads>"));
+            this.useBlock = configurationNode.getNode("block").getAsBoolean(true);
         }
 
-        this.editedMessage = builder.toString();
-        return containsAds;
     }
 
 }
@@ -0,0 +1,242 @@
+package ru.mrbrikster.chatty.moderation;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds IP-addresses and sites in normalized text (see {@link TextNormalizer.Mode#ADVERTISEMENT})
+ * in a single left-to-right pass without regular expressions.
+ *
+ * IP-addresses are four numbers up to 255 separated by one to four separator characters,
+ * so "127,0,0,1" and "127 . 0 . 0 . 1" are found too, as well as addresses glued to letters
+ * like "ip127.0.0.1" (but not to digits, "1127.0.0.1" is not an address).
+ * Sites are dot-separated names ending with a top-level domain from the bundled "tlds.txt",
+ * with an optional scheme, port and path.
+ */
+final class AdvertisementScanner {
+
+    private static final String IP_SEPARATORS = ".,-:;/()=?}+ ";
+    private static final Set<String> TOP_LEVEL_DOMAINS = loadTopLevelDomains();
+
+    private AdvertisementScanner() {
+    }
+
+    /**
+     * Scans text for advertisements
+     * @param text normalized text
+     * @param whitelist normalized whitelisted IP-addresses and sites, subdomains of sites are whitelisted too
+     * @param ads list to add start and end (exclusive) of found advertisements to
+     */
+    static void scan(@NotNull String text, @NotNull Set<String> whitelist, @NotNull List<int[]> ads) {
+        int length = text.length();
+
+        int index = 0;
+        while (index < length) {
+            if (!isHostCharacter(text.charAt(index))) {
+                index++;
+                continue;
+            }
+
+            int end = scanAddress(text, index, whitelist, ads);
+
+            if (end < 0) {
+                int tokenEnd = index;
+                while (tokenEnd < length && isHostCharacter(text.charAt(tokenEnd))) {
+                    tokenEnd++;
+                }
+
+                end = scanGluedAddress(text, index, tokenEnd, whitelist, ads);
+
+                if (end < 0) {
+                    end = Math.max(tokenEnd, scanSite(text, index, tokenEnd, whitelist, ads));
+                }
+            }
+
+            index = end;
+        }
+    }
+
+    /**
+     * Checks if host or any of its parent domains is whitelisted
+     * @param host normalized host
+     * @param whitelist normalized whitelisted hosts
+     * @return true if host is whitelisted
+     */
+    static boolean isWhitelisted(@NotNull String host, @NotNull Set<String> whitelist) {
+        int dot = -1;
+
+        do {
+            if (whitelist.contains(host.substring(dot + 1))) {
+                return true;
+            }
+        } while ((dot = host.indexOf('.', dot + 1)) >= 0);
+
+        return false;
+    }
+
+    // Returns end of IP-address, or -1 if there is no IP-address at start
+    private static int scanAddress(String text, int start, Set<String> whitelist, List<int[]> ads) {
+        int length = text.length();
+        int position = start;
+
+        StringBuilder address = new StringBuilder(15);
+        for (int group = 0; group < 4; group++) {
+            int digits = 0, value = 0;
+
+            while (position < length && digits < 3 && isDigit(text.charAt(position))) {
+                value = value * 10 + text.charAt(position++) - '0';
+                digits++;
+            }
+
+            if (digits == 0 || value > 255 || position < length && isDigit(text.charAt(position))) {
+                return -1;
+            }
+
+            address.append(value);
+
+            if (group == 3) {
+                break;
+            }
+
+            int separators = 0;
+            while (position < length && separators < 4 && IP_SEPARATORS.indexOf(text.charAt(position)) >= 0) {
+                position++;
+                separators++;
+            }
+
+            if (separators == 0) {
+                return -1;
+            }
+
+            address.append('.');
+        }
+
+        if (!whitelist.contains(address.toString())) {
+            ads.add(new int[] {start, position});
+        }
+
+        return position;
+    }
+
+    // Returns end of IP-address which starts after a letter inside the token, or -1 if there is none
+    private static int scanGluedAddress(String text, int start, int end, Set<String> whitelist, List<int[]> ads) {
+        for (int i = start + 1; i < end; i++) {
+            if (isDigit(text.charAt(i)) && Character.isLetter(text.charAt(i - 1))) {
+                int addressEnd = scanAddress(text, i, whitelist, ads);
+
+                if (addressEnd >= 0) {
+                    return addressEnd;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    // Returns end of site, or -1 if the token is not a site
+    private static int scanSite(String text, int start, int end, Set<String> whitelist, List<int[]> ads) {
+        while (end > start && !Character.isLetterOrDigit(text.charAt(end - 1))) {
+            end--;
+        }
+
+        int lastDot = lastIndexOf(text, '.', start, end);
+
+        if (lastDot <= start || !TOP_LEVEL_DOMAINS.contains(text.substring(lastDot + 1, end))) {
+            return -1;
+        }
+
+        // Host begins after the last empty label, e.g. "...example.com"
+        int hostStart = start;
+        for (int i = lastDot - 1; i > start; i--) {
+            if (text.charAt(i) == '.' && text.charAt(i - 1) == '.') {
+                hostStart = i + 1;
+                break;
+            }
+        }
+
+        while (hostStart < lastDot && !Character.isLetterOrDigit(text.charAt(hostStart))) {
+            hostStart++;
+        }
+
+        if (hostStart == lastDot) {
+            return -1;
+        }
+
+        int adStart = hostStart;
+        if (adStart >= 3 && text.startsWith("://", adStart - 3)) {
+            adStart -= 3;
+
+            while (adStart > 0 && Character.isLetter(text.charAt(adStart - 1))) {
+                adStart--;
+            }
+        }
+
+        // Port and path
+        int adEnd = end;
+        if (adEnd < text.length() && (text.charAt(adEnd) == ':' || text.charAt(adEnd) == '/')) {
+            while (adEnd < text.length() && !Character.isWhitespace(text.charAt(adEnd))) {
+                adEnd++;
+            }
+        }
+
+        if (!isWhitelisted(text.substring(hostStart, end), whitelist)) {
+            ads.add(new int[] {adStart, adEnd});
+        }
+
+        return adEnd;
+    }
+
+    // Searches only inside the token, so scanning stays linear
+    private static int lastIndexOf(String text, char c, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean isHostCharacter(char c) {
+        return Character.isLetterOrDigit(c) || c == '-' || c == '.';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static Set<String> loadTopLevelDomains() {
+        Set<String> domains = new HashSet<>();
+
+        try (InputStream inputStream = AdvertisementScanner.class.getResourceAsStream("/tlds.txt")) {
+            if (inputStream == null) {
+                return Collections.emptySet();
+            }
+
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    domains.add(TextNormalizer.normalize(line, TextNormalizer.Mode.ADVERTISEMENT).getText());
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+
+        return domains;
+    }
+
+}
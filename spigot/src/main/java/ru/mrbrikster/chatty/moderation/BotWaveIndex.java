@@ -0,0 +1,175 @@
+package ru.mrbrikster.chatty.moderation;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Server-wide index of recent messages, used to find the same message sent by many players.
+ *
+ * Every message gets a MinHash signature over character 3-shingles, and the signature is split
+ * into bands. Messages sharing a band fall into the same bucket (locality-sensitive hashing),
+ * so similar messages are found without comparing with every recent message.
+ * Candidates from buckets are verified with the similarity estimated from signatures.
+ *
+ * Memory is bounded by {@link #MAX_BUCKETS} buckets of at most {@link #MAX_ENTRIES} messages.
+ * Messages are evicted when they are older than the window, empty buckets are removed every 10 seconds.
+ */
+class BotWaveIndex {
+
+    private static final int BANDS = 8;
+    private static final int ROWS = 4;
+    private static final int[] SEEDS = new int[BANDS * ROWS];
+
+    static final int MAX_BUCKETS = 8192;
+    static final int MAX_ENTRIES = 16;
+
+    static {
+        for (int i = 0; i < SEEDS.length; i++) {
+            SEEDS[i] = (int) MessageFingerprint.mix(i + 1);
+        }
+    }
+
+    private final Map<Long, Bucket> buckets = new ConcurrentHashMap<>();
+    private volatile long window;
+
+    BotWaveIndex(JavaPlugin javaPlugin) {
+        Bukkit.getScheduler().runTaskTimerAsynchronously(javaPlugin, this::sweep, 200L, 200L);
+    }
+
+    /**
+     * Checks if similar messages were recently sent by other players, and remembers the message
+     * @param sender sender UUID
+     * @param text normalized message
+     * @param rule bot wave moderation settings
+     * @return true if similar messages were sent by enough distinct players within the window
+     */
+    boolean check(UUID sender, String text, BotWaveModerationMethod.Rule rule) {
+        if (MessageFingerprint.length(text) < rule.getMinLength()) {
+            return false;
+        }
+
+        this.window = rule.getWindow();
+
+        int[] signature = signature(text);
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(sender, signature, now);
+
+        Set<UUID> senders = new HashSet<>();
+        senders.add(sender);
+
+        for (int band = 0; band < BANDS; band++) {
+            long key = bandKey(signature, band);
+            Bucket bucket = buckets.get(key);
+
+            if (bucket == null) {
+                if (buckets.size() >= MAX_BUCKETS) {
+                    continue;
+                }
+
+                bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+            }
+
+            synchronized (bucket) {
+                bucket.evict(now - rule.getWindow());
+
+                for (Entry other : bucket.entries) {
+                    if (!senders.contains(other.sender) && similarity(signature, other.signature) >= rule.getSimilarity()) {
+                        senders.add(other.sender);
+                    }
+                }
+
+                if (bucket.entries.size() >= MAX_ENTRIES) {
+                    bucket.entries.removeFirst();
+                }
+
+                bucket.entries.addLast(entry);
+            }
+        }
+
+        return senders.size() >= rule.getSenders();
+    }
+
+    private void sweep() {
+        if (window == 0) {
+            return;
+        }
+
+        long threshold = System.currentTimeMillis() - window;
+        buckets.values().removeIf(bucket -> {
+            synchronized (bucket) {
+                bucket.evict(threshold);
+                return bucket.entries.isEmpty();
+            }
+        });
+    }
+
+    private static int[] signature(String text) {
+        int[] signature = new int[SEEDS.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+
+        MessageFingerprint.shingles(text, shingle -> {
+            for (int i = 0; i < SEEDS.length; i++) {
+                int hash = (int) MessageFingerprint.mix(shingle ^ SEEDS[i]);
+
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        });
+
+        return signature;
+    }
+
+    private static long bandKey(int[] signature, int band) {
+        long key = band;
+
+        for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+            key = key * 31 + signature[row];
+        }
+
+        return MessageFingerprint.mix(key);
+    }
+
+    // Share of equal signature values estimates Jaccard similarity of shingle sets
+    private static double similarity(int[] first, int[] second) {
+        int equal = 0;
+
+        for (int i = 0; i < first.length; i++) {
+            if (first[i] == second[i]) {
+                equal++;
+            }
+        }
+
+        return (double) equal / first.length;
+    }
+
+    private static final class Bucket {
+
+        private final Deque<Entry> entries = new ArrayDeque<>();
+
+        private void evict(long threshold) {
+            while (!entries.isEmpty() && entries.peekFirst().time < threshold) {
+                entries.removeFirst();
+            }
+        }
+
+    }
+
+    private static final class Entry {
+
+        private final UUID sender;
+        private final int[] signature;
+        private final long time;
+
+        private Entry(UUID sender, int[] signature, long time) {
+            this.sender = sender;
+            this.signature = signature;
+            this.time = time;
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+package ru.mrbrikster.chatty.moderation;
+
+import lombok.Getter;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import ru.mrbrikster.baseplugin.config.ConfigurationNode;
+
+public class BotWaveModerationMethod extends ModerationMethod {
+
+    private final Rule rule;
+    private final BotWaveIndex index;
+    private final CommandSender sender;
+
+    private boolean checked = false, result = false;
+
+    BotWaveModerationMethod(Rule rule, BotWaveIndex index, CommandSender sender, String message) {
+        super(message);
+
+        this.rule = rule;
+        this.index = index;
+        this.sender = sender;
+    }
+
+    @Override
+    public String getEditedMessage() {
+        return message;
+    }
+
+    @Override
+    public boolean isBlocked() {
+        if (!checked) {
+            this.result = sender instanceof Player
+                    && index.check(((Player) sender).getUniqueId(), getNormalized(TextNormalizer.Mode.SWEARS).getText(), rule);
+            this.checked = true;
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean isUseBlock() {
+        return rule.useBlock;
+    }
+
+    @Override
+    public String getLogPrefix() {
+        return "BOTWAVE";
+    }
+
+    @Override
+    public String getWarningMessageKey() {
+        return "bot-wave-found";
+    }
+
+    /**
+     * Compiled bot wave moderation settings, shared by all messages
+     */
+    @Getter
+    static final class Rule {
+
+        private final long window;
+        private final int senders;
+        private final double similarity;
+        private final int minLength;
+        private final boolean useBlock;
+
+        Rule(ConfigurationNode configurationNode) {
+            this.window = Math.max(1, configurationNode.getNode("window").getAsLong(30)) * 1000;
+            this.senders = Math.max(2, configurationNode.getNode("senders").getAsInt(4));
+            this.similarity = configurationNode.getNode("similarity").getAsInt(70) / 100D;
+            this.minLength = configurationNode.getNode("min-length").getAsInt(12);
+            this.useBlock = configurationNode.getNode("block").getAsBoolean(true);
+        }
+
+    }
+
+}
@@ -1,20 +1,20 @@
 package ru.mrbrikster.chatty.moderation;
 
-import lombok.Getter;
 import ru.mrbrikster.baseplugin.config.ConfigurationNode;
 
 public class CapsModerationMethod extends ModerationMethod {
 
-    private final int percent;
-    private final int length;
-    @Getter private final boolean useBlock;
+    private final Rule rule;
 
-    CapsModerationMethod(ConfigurationNode configurationNode, String message) {
+    CapsModerationMethod(Rule rule, String message) {
         super(message);
 
-        this.useBlock = configurationNode.getNode("block").getAsBoolean(true);
-        this.percent = configurationNode.getNode("percent").getAsInt(80);
-        this.length = configurationNode.getNode("length").getAsInt(6);
+        this.rule = rule;
+    }
+
+    @Override
+    public boolean isUseBlock() {
+        return rule.useBlock;
     }
 
     @Override
@@ -24,7 +24,7 @@ public class CapsModerationMethod extends ModerationMethod {
 
     @Override
     public boolean isBlocked() {
-        return message.length() >= length && getPercent() >= percent;
+        return message.length() >= rule.length && getPercent() >= rule.percent;
     }
 
     @Override
@@ -52,4 +52,21 @@ public class CapsModerationMethod extends ModerationMethod {
         return (double) capsLength / (double) length * 100;
     }
 
+    /**
+     * Compiled caps moderation settings, shared by all messages
+     */
+    static final class Rule {
+
+        private final int percent;
+        private final int length;
+        private final boolean useBlock;
+
+        Rule(ConfigurationNode configurationNode) {
+            this.useBlock = configurationNode.getNode("block").getAsBoolean(true);
+            this.percent = configurationNode.getNode("percent").getAsInt(80);
+            this.length = configurationNode.getNode("length").getAsInt(6);
+        }
+
+    }
+
 }
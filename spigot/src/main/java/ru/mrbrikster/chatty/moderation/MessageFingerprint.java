@@ -0,0 +1,145 @@
+package ru.mrbrikster.chatty.moderation;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Fingerprints of normalized messages, used to find repeated and similar messages.
+ *
+ * Only letters and digits are taken into account, and runs of the same character
+ * are collapsed, so "hello!!!", "h e l l o" and "heeello" have the same fingerprints.
+ */
+final class MessageFingerprint {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private MessageFingerprint() {
+    }
+
+    /**
+     * Returns exact hash of the text
+     * @param text normalized text
+     * @return 64-bit FNV-1a hash
+     */
+    static long hash(String text) {
+        long hash = FNV_OFFSET;
+
+        char previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (Character.isLetterOrDigit(c) && c != previous) {
+                hash = (hash ^ c) * FNV_PRIME;
+                previous = c;
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Returns hash of the whole text except whitespace, for texts without enough letters and digits
+     * for {@link #hash(String)}, so that ":)" and "?" are not the same message
+     * @param text normalized text
+     * @return 64-bit FNV-1a hash
+     */
+    static long rawHash(String text) {
+        long hash = FNV_OFFSET;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (!Character.isWhitespace(c)) {
+                hash = (hash ^ c) * FNV_PRIME;
+            }
+        }
+
+        return hash;
+    }
+
+    /**
+     * Returns SimHash of the text over character 3-shingles.
+     * Similar texts have fingerprints with a small number of different bits
+     * @param text normalized text
+     * @return 64-bit SimHash
+     */
+    static long simHash(String text) {
+        int[] weights = new int[64];
+
+        shingles(text, shingle -> {
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += (shingle >>> bit & 1) == 0 ? -1 : 1;
+            }
+        });
+
+        long simHash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                simHash |= 1L << bit;
+            }
+        }
+
+        return simHash;
+    }
+
+    /**
+     * Returns number of characters taken into account by fingerprints
+     * @param text normalized text
+     * @return length of collapsed text
+     */
+    static int length(String text) {
+        int length = 0;
+
+        char previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (Character.isLetterOrDigit(c) && c != previous) {
+                length++;
+                previous = c;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Passes hashes of character 3-shingles of the text to the consumer.
+     * Text shorter than a shingle is passed as a single shingle
+     * @param text normalized text
+     * @param consumer shingle hash consumer
+     */
+    static void shingles(String text, LongConsumer consumer) {
+        long window = 0;
+        int count = 0;
+
+        char previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            if (Character.isLetterOrDigit(c) && c != previous) {
+                window = (window << 16 | c) & 0xFFFFFFFFFFFFL;
+                previous = c;
+
+                if (++count >= 3) {
+                    consumer.accept(mix(window));
+                }
+            }
+        }
+
+        if (count > 0 && count < 3) {
+            consumer.accept(mix(window));
+        }
+    }
+
+    // Finalizer of MurmurHash3, spreads shingle bits over the whole long
+    static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+}
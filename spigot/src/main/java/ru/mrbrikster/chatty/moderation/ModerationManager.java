@@ -1,22 +1,40 @@
 package ru.mrbrikster.chatty.moderation;
 
 import lombok.Getter;
+import org.bukkit.command.CommandSender;
 import org.bukkit.plugin.java.JavaPlugin;
 import ru.mrbrikster.baseplugin.config.Configuration;
 import ru.mrbrikster.baseplugin.config.ConfigurationNode;
 import ru.mrbrikster.chatty.Chatty;
 
+import java.util.regex.PatternSyntaxException;
+
 public class ModerationManager {
 
     private final JavaPlugin javaPlugin;
     private final Configuration configuration;
-    @Getter private boolean capsModerationEnabled;
-    @Getter private boolean advertisementModerationEnabled;
-    @Getter private boolean swearModerationEnabled;
+    @Getter private volatile boolean capsModerationEnabled;
+    @Getter private volatile boolean advertisementModerationEnabled;
+    @Getter private volatile boolean swearModerationEnabled;
+    @Getter private volatile boolean repeatModerationEnabled;
+    @Getter private volatile boolean botWaveModerationEnabled;
+    @Getter private volatile long rulesVersion;
+
+    private final RepeatHistory repeatHistory;
+    private final BotWaveIndex botWaveIndex;
+    private SwearDictionaryLoader swearDictionaryLoader;
+
+    private volatile CapsModerationMethod.Rule capsRule;
+    private volatile AdvertisementModerationMethod.Rule advertisementRule;
+    private volatile SwearModerationMethod.Rule swearRule;
+    private volatile RepeatModerationMethod.Rule repeatRule;
+    private volatile BotWaveModerationMethod.Rule botWaveRule;
 
     public ModerationManager(Chatty chatty) {
         this.javaPlugin = chatty;
         this.configuration = chatty.getExact(Configuration.class);
+        this.repeatHistory = new RepeatHistory(chatty);
+        this.botWaveIndex = new BotWaveIndex(chatty);
 
         init();
         configuration.onReload(config -> reload());
@@ -35,9 +53,39 @@ public class ModerationManager {
         this.swearModerationEnabled = moderationNode.getNode("swear.enable")
                 .getAsBoolean(false);
 
+        this.repeatModerationEnabled = moderationNode.getNode("repeat.enable")
+                .getAsBoolean(false);
+
+        this.botWaveModerationEnabled = moderationNode.getNode("bot-wave.enable")
+                .getAsBoolean(false);
+
+        this.capsRule = new CapsModerationMethod.Rule(moderationNode.getNode("caps"));
+        this.swearRule = new SwearModerationMethod.Rule(moderationNode.getNode("swear"));
+        this.repeatRule = new RepeatModerationMethod.Rule(moderationNode.getNode("repeat"));
+        this.botWaveRule = new BotWaveModerationMethod.Rule(moderationNode.getNode("bot-wave"));
+
+        try {
+            this.advertisementRule = new AdvertisementModerationMethod.Rule(moderationNode.getNode("advertisement"));
+        } catch (PatternSyntaxException e) {
+            javaPlugin.getLogger().warning("Invalid advertisement pattern, advertisement moderation is disabled: " + e.getMessage());
+            this.advertisementModerationEnabled = false;
+        }
+
         if (swearModerationEnabled) {
-            SwearModerationMethod.init(javaPlugin);
+            if (swearDictionaryLoader == null) {
+                this.swearDictionaryLoader = new SwearDictionaryLoader(javaPlugin);
+                swearDictionaryLoader.load();
+            } else {
+                // Reload does not wait for compilation, the previous dictionary is used until then
+                swearDictionaryLoader.reload();
+            }
+        } else if (swearDictionaryLoader != null) {
+            swearDictionaryLoader.close();
+            this.swearDictionaryLoader = null;
         }
+
+        // Cached verdicts of the previous rules are not used anymore
+        this.rulesVersion++;
     }
 
     private void reload() {
@@ -45,15 +93,32 @@ public class ModerationManager {
     }
 
     public CapsModerationMethod getCapsMethod(String message) {
-        return new CapsModerationMethod(configuration.getNode("moderation.caps"), message);
+        return new CapsModerationMethod(capsRule, message);
     }
 
     public AdvertisementModerationMethod getAdvertisementMethod(String message) {
-        return new AdvertisementModerationMethod(configuration.getNode("moderation.advertisement"), message);
+        return new AdvertisementModerationMethod(advertisementRule, message);
     }
 
     public SwearModerationMethod getSwearMethod(String message) {
-        return new SwearModerationMethod(configuration.getNode("moderation.swear"), message);
+        return new SwearModerationMethod(swearRule, message);
+    }
+
+    public RepeatModerationMethod getRepeatMethod(CommandSender sender, String message) {
+        return new RepeatModerationMethod(repeatRule, repeatHistory, sender, message);
+    }
+
+    public BotWaveModerationMethod getBotWaveMethod(CommandSender sender, String message) {
+        return new BotWaveModerationMethod(botWaveRule, botWaveIndex, sender, message);
+    }
+
+    /**
+     * Stops watching swears files
+     */
+    public void close() {
+        if (swearDictionaryLoader != null) {
+            swearDictionaryLoader.close();
+        }
     }
 
 }
@@ -3,8 +3,9 @@ package ru.mrbrikster.chatty.moderation;
 public abstract class ModerationMethod {
 
     protected final String message;
+    private NormalizedViews views;
 
-    ModerationMethod(String message) {
+    protected ModerationMethod(String message) {
         this.message = message;
     }
 
@@ -18,4 +19,22 @@ public abstract class ModerationMethod {
 
     public abstract String getWarningMessageKey();
 
+    /**
+     * Returns normalized view of the message.
+     * Views are shared by all methods of a {@link ModerationPipeline} checking the same message
+     * @param mode normalization mode
+     * @return normalized message
+     */
+    protected TextNormalizer.Normalized getNormalized(TextNormalizer.Mode mode) {
+        if (views == null || !views.isOf(message)) {
+            views = new NormalizedViews(message);
+        }
+
+        return views.get(mode);
+    }
+
+    void setViews(NormalizedViews views) {
+        this.views = views;
+    }
+
 }
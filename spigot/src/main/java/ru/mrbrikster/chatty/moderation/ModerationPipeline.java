@@ -0,0 +1,495 @@
+package ru.mrbrikster.chatty.moderation;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.Getter;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mrbrikster.baseplugin.config.Configuration;
+import ru.mrbrikster.chatty.Chatty;
+import ru.mrbrikster.chatty.util.PermissionCache;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Ordered chain of moderation methods, used by chats, "/msg" and "/reply".
+ *
+ * Methods are run from the cheapest to the most expensive one, each on the message
+ * edited by the previous methods. Normalized views of the message are computed once
+ * and shared by methods until the message is changed. The chain stops at the first
+ * method that blocks the message.
+ *
+ * Verdicts of methods depending only on the message text are cached by the message,
+ * so common short messages are checked once per rules version. The cache is invalidated
+ * by configuration reload and by swear dictionary changes.
+ *
+ * Other plugins may add their own methods with {@link #register(String, int, String, Function)}.
+ */
+public class ModerationPipeline {
+
+    public static final int REPEAT_COST = 50;
+    public static final int BOT_WAVE_COST = 60;
+    public static final int CAPS_COST = 100;
+    public static final int ADVERTISEMENT_COST = 200;
+    public static final int SWEAR_COST = 300;
+
+    // Longer messages are rarely repeated exactly
+    private static final int MAX_CACHED_LENGTH = 128;
+
+    private final Chatty chatty;
+    private final Configuration configuration;
+    private final PermissionCache permissionCache;
+    private final ModerationManager moderationManager;
+
+    private volatile List<Stage> stages = Collections.emptyList();
+    private volatile long cacheVersion;
+    private volatile Cache<VerdictKey, Verdict> cache;
+
+    public ModerationPipeline(Chatty chatty) {
+        this.chatty = chatty;
+        this.configuration = chatty.getExact(Configuration.class);
+        this.permissionCache = chatty.getExact(PermissionCache.class);
+        this.moderationManager = chatty.getExact(ModerationManager.class);
+
+        register("repeat", REPEAT_COST, "chatty.moderation.repeat", false,
+                moderationManager::isRepeatModerationEnabled, moderationManager::getRepeatMethod);
+        register("bot-wave", BOT_WAVE_COST, "chatty.moderation.bot-wave", false,
+                moderationManager::isBotWaveModerationEnabled, moderationManager::getBotWaveMethod);
+        register("caps", CAPS_COST, "chatty.moderation.caps", true,
+                moderationManager::isCapsModerationEnabled, (sender, message) -> moderationManager.getCapsMethod(message));
+        register("advertisement", ADVERTISEMENT_COST, "chatty.moderation.advertisement", true,
+                moderationManager::isAdvertisementModerationEnabled, (sender, message) -> moderationManager.getAdvertisementMethod(message));
+        register("swear", SWEAR_COST, "chatty.moderation.swear", true,
+                moderationManager::isSwearModerationEnabled, (sender, message) -> moderationManager.getSwearMethod(message));
+
+        init();
+        configuration.onReload(config -> init());
+    }
+
+    private void init() {
+        int size = configuration.getNode("moderation.cache-size").getAsInt(1024);
+
+        this.cache = size <= 0 ? null : CacheBuilder.newBuilder()
+                .maximumSize(size)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Adds moderation method to the pipeline, replacing method with the same name
+     * @param name unique method name
+     * @param cost relative cost of the method, cheaper methods are run first
+     * @param bypassPermission permission to bypass the method, or null
+     * @param factory function creating method for a message, verdicts of the method are cached
+     */
+    public void register(@NotNull String name, int cost, @Nullable String bypassPermission,
+                         @NotNull Function<String, ? extends ModerationMethod> factory) {
+        register(name, cost, bypassPermission, true, () -> true, (sender, message) -> factory.apply(message));
+    }
+
+    /**
+     * Adds moderation method depending on the message sender to the pipeline,
+     * replacing method with the same name
+     * @param name unique method name
+     * @param cost relative cost of the method, cheaper methods are run first
+     * @param bypassPermission permission to bypass the method, or null
+     * @param factory function creating method for a sender and a message
+     */
+    public void register(@NotNull String name, int cost, @Nullable String bypassPermission,
+                         @NotNull BiFunction<CommandSender, String, ? extends ModerationMethod> factory) {
+        register(name, cost, bypassPermission, false, () -> true, factory);
+    }
+
+    /**
+     * Removes moderation method from the pipeline
+     * @param name method name
+     */
+    public synchronized void unregister(@NotNull String name) {
+        List<Stage> stages = new ArrayList<>(this.stages);
+
+        if (stages.removeIf(stage -> stage.name.equals(name))) {
+            this.stages = Collections.unmodifiableList(stages);
+        }
+    }
+
+    /**
+     * Drops cached verdicts, plugins should call it when rules of their methods are changed
+     */
+    public synchronized void invalidateCache() {
+        this.cacheVersion++;
+
+        Cache<VerdictKey, Verdict> cache = this.cache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Runs moderation methods for the message
+     * @param sender message sender, methods with bypass permission of the sender are skipped
+     * @param message message to check
+     * @param filter names of methods applicable to the message, e.g. enabled for a chat
+     * @return moderation result
+     */
+    @NotNull
+    public Result moderate(@NotNull CommandSender sender, @NotNull String message, @NotNull Predicate<String> filter) {
+        // Versions are read before methods are run, so verdicts of the previous rules are never cached as new ones
+        long cacheVersion = this.cacheVersion;
+        long rulesVersion = moderationManager.getRulesVersion();
+        long dictionaryVersion = SwearModerationMethod.getDictionaryVersion();
+        Cache<VerdictKey, Verdict> cache = this.cache;
+
+        // Indexes in the mask are valid only for this list, it is replaced on every change
+        List<Stage> stages = this.stages;
+        Result result = new Result(message);
+        Run run = new Run(sender, result);
+
+        int index = 0;
+        while (index < stages.size() && !result.blocked) {
+            Stage stage = stages.get(index);
+
+            if (!isApplicable(stage, sender, filter)) {
+                index++;
+                continue;
+            }
+
+            if (cache == null || !stage.cacheable || index >= Long.SIZE || result.message.length() > MAX_CACHED_LENGTH) {
+                run.apply(run.check(stage, result.message));
+                index++;
+                continue;
+            }
+
+            // Consecutive cacheable methods are cached as one verdict
+            List<Stage> segment = new ArrayList<>(stages.size() - index);
+            long mask = 0;
+            for (; index < stages.size() && index < Long.SIZE; index++) {
+                Stage next = stages.get(index);
+
+                if (isApplicable(next, sender, filter)) {
+                    if (!next.cacheable) {
+                        break;
+                    }
+
+                    segment.add(next);
+                    mask |= 1L << index;
+                }
+            }
+
+            VerdictKey key = new VerdictKey(result.message, stages, mask, cacheVersion, rulesVersion, dictionaryVersion);
+            Verdict verdict = cache.getIfPresent(key);
+
+            if (verdict == null) {
+                verdict = run.check(segment);
+                cache.put(key, verdict);
+            }
+
+            for (ModerationMethod method : verdict.methods) {
+                run.apply(method);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns statistics of the verdict cache since the last configuration reload
+     * @return cache statistics, or null if cache is disabled
+     */
+    @Nullable
+    public CacheStatistics getCacheStatistics() {
+        Cache<VerdictKey, Verdict> cache = this.cache;
+
+        if (cache == null) {
+            return null;
+        }
+
+        CacheStats stats = cache.stats();
+        return new CacheStatistics(stats.hitCount(), stats.missCount(), cache.size());
+    }
+
+    /**
+     * Returns statistics of moderation methods since the server start
+     * @return statistics in pipeline order
+     */
+    @NotNull
+    public List<Statistics> getStatistics() {
+        List<Statistics> statistics = new ArrayList<>();
+
+        for (Stage stage : stages) {
+            statistics.add(new Statistics(stage.name, stage.calls.sum(), stage.hits.sum(), stage.time.sum()));
+        }
+
+        return statistics;
+    }
+
+    private boolean isApplicable(Stage stage, CommandSender sender, Predicate<String> filter) {
+        return stage.enabled.getAsBoolean() && filter.test(stage.name)
+                && (stage.bypassPermission == null || !permissionCache.has(sender, stage.bypassPermission));
+    }
+
+    private synchronized void register(String name, int cost, String bypassPermission, boolean cacheable,
+                                       BooleanSupplier enabled, BiFunction<CommandSender, String, ? extends ModerationMethod> factory) {
+        List<Stage> stages = new ArrayList<>(this.stages);
+        stages.removeIf(stage -> stage.name.equals(name));
+        stages.add(new Stage(name, cost,
+                bypassPermission == null ? null : permissionCache.node(bypassPermission), cacheable, enabled, factory));
+        stages.sort(Comparator.comparingInt(stage -> stage.cost));
+
+        this.stages = Collections.unmodifiableList(stages);
+    }
+
+    /**
+     * State of one {@link #moderate(CommandSender, String, Predicate)} call
+     */
+    private final class Run {
+
+        private final CommandSender sender;
+        private final Result result;
+        private NormalizedViews views;
+
+        private Run(CommandSender sender, Result result) {
+            this.sender = sender;
+            this.result = result;
+        }
+
+        // Returns method if it found a violation in the message, or null
+        private ModerationMethod check(Stage stage, String message) {
+            if (views == null || !views.isOf(message)) {
+                views = new NormalizedViews(message);
+            }
+
+            long start = System.nanoTime();
+
+            ModerationMethod method = stage.factory.apply(sender, message);
+            method.setViews(views);
+
+            boolean blocked = method.isBlocked();
+            if (blocked) {
+                method.getEditedMessage();
+            }
+
+            stage.time.add(System.nanoTime() - start);
+            stage.calls.increment();
+
+            if (!blocked) {
+                return null;
+            }
+
+            stage.hits.increment();
+            return method;
+        }
+
+        // Checks the current message by the segment without changing the result
+        private Verdict check(List<Stage> segment) {
+            String message = result.message;
+            List<ModerationMethod> methods = new ArrayList<>(2);
+
+            for (Stage stage : segment) {
+                ModerationMethod method = check(stage, message);
+
+                if (method == null) {
+                    continue;
+                }
+
+                // Cached methods should not keep normalized views of the message
+                method.setViews(null);
+                methods.add(method);
+                message = method.getEditedMessage();
+
+                if (method.isUseBlock()) {
+                    break;
+                }
+            }
+
+            return new Verdict(methods.toArray(new ModerationMethod[0]));
+        }
+
+        private void apply(ModerationMethod method) {
+            if (method == null) {
+                return;
+            }
+
+            result.methods.add(method);
+            result.message = method.getEditedMessage();
+
+            String warningMessage = chatty.messages().get(method.getWarningMessageKey(), null);
+
+            if (warningMessage != null) {
+                Bukkit.getScheduler().runTaskLaterAsynchronously(chatty, () -> sender.sendMessage(warningMessage), 5L);
+            }
+
+            if (method.isUseBlock()) {
+                result.blocked = true;
+            }
+        }
+
+    }
+
+    public static final class Result {
+
+        @Getter private String message;
+        @Getter private boolean blocked;
+        private final List<ModerationMethod> methods = new ArrayList<>(2);
+
+        private Result(String message) {
+            this.message = message;
+        }
+
+        /**
+         * Returns methods that found violations, in order they were run
+         * @return triggered methods
+         */
+        @NotNull
+        public List<ModerationMethod> getMethods() {
+            return Collections.unmodifiableList(methods);
+        }
+
+        /**
+         * Returns the method that blocked the message
+         * @return blocking method, if message is blocked
+         */
+        @NotNull
+        public Optional<ModerationMethod> getBlockingMethod() {
+            return blocked ? Optional.of(methods.get(methods.size() - 1)) : Optional.empty();
+        }
+
+        @NotNull
+        public <T extends ModerationMethod> Optional<T> getMethod(@NotNull Class<T> clazz) {
+            for (ModerationMethod method : methods) {
+                if (clazz.isInstance(method)) {
+                    return Optional.of(clazz.cast(method));
+                }
+            }
+
+            return Optional.empty();
+        }
+
+    }
+
+    @Getter
+    public static final class Statistics {
+
+        private final String name;
+        private final long calls;
+        private final long hits;
+        private final long totalNanos;
+
+        private Statistics(String name, long calls, long hits, long totalNanos) {
+            this.name = name;
+            this.calls = calls;
+            this.hits = hits;
+            this.totalNanos = totalNanos;
+        }
+
+        public long getAverageNanos() {
+            return calls == 0 ? 0 : totalNanos / calls;
+        }
+
+    }
+
+    @Getter
+    public static final class CacheStatistics {
+
+        private final long hits;
+        private final long misses;
+        private final long size;
+
+        private CacheStatistics(long hits, long misses, long size) {
+            this.hits = hits;
+            this.misses = misses;
+            this.size = size;
+        }
+
+        public double getHitRatio() {
+            return hits + misses == 0 ? 0 : (double) hits / (hits + misses);
+        }
+
+    }
+
+    private static final class Stage {
+
+        private final String name;
+        private final int cost;
+        private final PermissionCache.Node bypassPermission;
+        private final boolean cacheable;
+        private final BooleanSupplier enabled;
+        private final BiFunction<CommandSender, String, ? extends ModerationMethod> factory;
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder time = new LongAdder();
+
+        private Stage(String name, int cost, PermissionCache.Node bypassPermission, boolean cacheable,
+                      BooleanSupplier enabled, BiFunction<CommandSender, String, ? extends ModerationMethod> factory) {
+            this.name = name;
+            this.cost = cost;
+            this.bypassPermission = bypassPermission;
+            this.cacheable = cacheable;
+            this.enabled = enabled;
+            this.factory = factory;
+        }
+
+    }
+
+    /**
+     * Message checked by a set of cacheable methods under one version of rules
+     */
+    private static final class VerdictKey {
+
+        private final String message;
+        private final List<Stage> stages;
+        private final long mask;
+        private final long cacheVersion;
+        private final long rulesVersion;
+        private final long dictionaryVersion;
+
+        private VerdictKey(String message, List<Stage> stages, long mask,
+                           long cacheVersion, long rulesVersion, long dictionaryVersion) {
+            this.message = message;
+            this.stages = stages;
+            this.mask = mask;
+            this.cacheVersion = cacheVersion;
+            this.rulesVersion = rulesVersion;
+            this.dictionaryVersion = dictionaryVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof VerdictKey)) return false;
+
+            VerdictKey that = (VerdictKey) o;
+            return stages == that.stages && mask == that.mask && cacheVersion == that.cacheVersion
+                    && rulesVersion == that.rulesVersion && dictionaryVersion == that.dictionaryVersion
+                    && message.equals(that.message);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(message, System.identityHashCode(stages), mask, cacheVersion, rulesVersion, dictionaryVersion);
+        }
+
+    }
+
+    /**
+     * Methods that found violations in a cached message, methods are not changed after the check
+     */
+    private static final class Verdict {
+
+        private final ModerationMethod[] methods;
+
+        private Verdict(ModerationMethod[] methods) {
+            this.methods = methods;
+        }
+
+    }
+
+}
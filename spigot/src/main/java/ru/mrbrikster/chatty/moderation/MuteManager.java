@@ -0,0 +1,269 @@
+package ru.mrbrikster.chatty.moderation;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import lombok.Getter;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import ru.mrbrikster.chatty.Chatty;
+import ru.mrbrikster.chatty.reflection.Reflection;
+import ru.mrbrikster.chatty.storage.StorageBackend;
+import ru.mrbrikster.chatty.util.TimingWheel;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Timed mutes of online players, in all chats or in a single chat.
+ *
+ * Mutes are saved to "mute" property as a map of chat names ("*" for all chats) to expiration times,
+ * and are kept in memory while player is online, so checking a message is a single map lookup.
+ * Expiration is driven by one {@link TimingWheel}, advanced every second.
+ */
+public class MuteManager implements Listener {
+
+    private static final String PROPERTY = "mute";
+    private static final String ALL_CHATS = "*";
+
+    private final StorageBackend storage;
+    private final TimingWheel<Mute> timingWheel;
+
+    // Immutable maps of chat names to mutes, replaced on every change
+    private final Map<UUID, Map<String, Mute>> mutes = new ConcurrentHashMap<>();
+
+    public MuteManager(Chatty chatty) {
+        this.storage = chatty.getExact(StorageBackend.class);
+        this.timingWheel = new TimingWheel<>(1000L, System.currentTimeMillis());
+
+        for (Player player : Reflection.getOnlinePlayers()) {
+            storage.whenLoaded(player, () -> load(player));
+        }
+
+        Bukkit.getPluginManager().registerEvents(this, chatty);
+        Bukkit.getScheduler().runTaskTimerAsynchronously(chatty, this::advance, 20L, 20L);
+    }
+
+    /**
+     * Returns active mute of the player
+     * @param player player to check
+     * @param chat chat name, or null to check only mute in all chats (e.g. for private messages)
+     * @return mute in all chats, or mute in the chat
+     */
+    @NotNull
+    public Optional<Mute> getMute(@NotNull Player player, @Nullable String chat) {
+        Map<String, Mute> playerMutes = mutes.get(player.getUniqueId());
+
+        if (playerMutes == null) {
+            return Optional.empty();
+        }
+
+        long now = System.currentTimeMillis();
+
+        // Expired mutes may stay here for up to a second until the wheel removes them
+        Mute mute = playerMutes.get(ALL_CHATS);
+        if (mute != null && mute.expires > now) {
+            return Optional.of(mute);
+        }
+
+        mute = chat == null ? null : playerMutes.get(chat.toLowerCase());
+        if (mute != null && mute.expires > now) {
+            return Optional.of(mute);
+        }
+
+        return Optional.empty();
+    }
+
+    /**
+     * Mutes player, replacing the previous mute in the same chat
+     * @param player player to mute
+     * @param chat chat name, or null to mute in all chats
+     * @param duration duration in milliseconds
+     * @return new mute
+     */
+    @NotNull
+    public Mute mute(@NotNull Player player, @Nullable String chat, long duration) {
+        Mute mute = new Mute(player.getUniqueId(), chat == null ? ALL_CHATS : chat.toLowerCase(),
+                System.currentTimeMillis() + duration);
+
+        update(player, mute.chat, mute);
+        return mute;
+    }
+
+    /**
+     * Removes mute of the player
+     * @param player player to unmute
+     * @param chat chat name, or null to remove mute in all chats
+     * @return false if player was not muted in the chat
+     */
+    public boolean unmute(@NotNull Player player, @Nullable String chat) {
+        return update(player, chat == null ? ALL_CHATS : chat.toLowerCase(), null) != null;
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        storage.whenLoaded(player, () -> load(player));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        unload(event.getPlayer());
+    }
+
+    private void advance() {
+        // Expired mutes are handled outside of the wheel lock, as mute changes lock the wheel too
+        List<Mute> expired = new ArrayList<>();
+        timingWheel.advance(System.currentTimeMillis(), expired::add);
+
+        expired.forEach(this::expire);
+    }
+
+    // Replaces mute in the chat and saves mutes, returns the previous mute
+    private synchronized Mute update(Player player, String chat, Mute mute) {
+        Map<String, Mute> playerMutes = new HashMap<>(mutes.getOrDefault(player.getUniqueId(), Collections.emptyMap()));
+        Mute previous = mute == null ? playerMutes.remove(chat) : playerMutes.put(chat, mute);
+
+        if (previous != null) {
+            cancel(previous);
+        }
+
+        if (mute != null) {
+            mute.timeout = timingWheel.schedule(mute, mute.expires);
+        }
+
+        if (playerMutes.isEmpty()) {
+            mutes.remove(player.getUniqueId());
+        } else {
+            mutes.put(player.getUniqueId(), Collections.unmodifiableMap(playerMutes));
+        }
+
+        // Saved together with stored mutes once they are loaded
+        if (storage.isLoaded(player)) {
+            save(player, playerMutes);
+        }
+
+        return previous;
+    }
+
+    private synchronized void expire(Mute mute) {
+        Map<String, Mute> playerMutes = mutes.get(mute.player);
+
+        // Mute may be already replaced
+        if (playerMutes == null || playerMutes.get(mute.chat) != mute) {
+            return;
+        }
+
+        Player player = Bukkit.getPlayer(mute.player);
+        if (player != null) {
+            update(player, mute.chat, null);
+
+            String message = Chatty.instance().messages().get("mute-expired", null);
+            if (message != null) {
+                player.sendMessage(message);
+            }
+        }
+    }
+
+    private synchronized void load(Player player) {
+        // Player has quit before the data was loaded
+        if (!player.isOnline()) {
+            return;
+        }
+
+        JsonElement property = storage.getProperty(player, PROPERTY).orElse(null);
+
+        // Mutes given before the data was loaded replace stored ones
+        Map<String, Mute> currentMutes = mutes.getOrDefault(player.getUniqueId(), Collections.emptyMap());
+
+        long now = System.currentTimeMillis();
+        Map<String, Mute> playerMutes = new HashMap<>();
+        int storedMutes = 0;
+
+        if (property != null && property.isJsonObject()) {
+            storedMutes = property.getAsJsonObject().size();
+
+            for (Map.Entry<String, JsonElement> entry : property.getAsJsonObject().entrySet()) {
+                long expires = entry.getValue().getAsLong();
+
+                if (expires > now && !currentMutes.containsKey(entry.getKey())) {
+                    Mute mute = new Mute(player.getUniqueId(), entry.getKey(), expires);
+                    mute.timeout = timingWheel.schedule(mute, expires);
+                    playerMutes.put(mute.chat, mute);
+                }
+            }
+        }
+
+        playerMutes.putAll(currentMutes);
+
+        if (!playerMutes.isEmpty()) {
+            mutes.put(player.getUniqueId(), Collections.unmodifiableMap(playerMutes));
+        }
+
+        // Mutes expired while player was offline
+        if (!currentMutes.isEmpty() || playerMutes.size() != storedMutes) {
+            save(player, playerMutes);
+        }
+    }
+
+    private synchronized void unload(Player player) {
+        Map<String, Mute> playerMutes = mutes.remove(player.getUniqueId());
+
+        if (playerMutes != null) {
+            playerMutes.values().forEach(this::cancel);
+        }
+    }
+
+    private void save(Player player, Map<String, Mute> playerMutes) {
+        if (playerMutes.isEmpty()) {
+            storage.removeProperty(player, PROPERTY);
+            return;
+        }
+
+        JsonObject jsonObject = new JsonObject();
+        playerMutes.forEach((chat, mute) -> jsonObject.addProperty(chat, mute.expires));
+
+        storage.setProperty(player, PROPERTY, jsonObject);
+    }
+
+    private void cancel(Mute mute) {
+        if (mute.timeout != null) {
+            timingWheel.cancel(mute.timeout);
+        }
+    }
+
+    public static final class Mute {
+
+        private final UUID player;
+        private final String chat;
+        @Getter private final long expires;
+        private TimingWheel.Timeout<Mute> timeout;
+
+        private Mute(UUID player, String chat, long expires) {
+            this.player = player;
+            this.chat = chat;
+            this.expires = expires;
+        }
+
+        /**
+         * Returns chat name of the mute
+         * @return lower case chat name, or null for mute in all chats
+         */
+        @Nullable
+        public String getChat() {
+            return ALL_CHATS.equals(chat) ? null : chat;
+        }
+
+        public long getRemaining() {
+            return Math.max(0, expires - System.currentTimeMillis());
+        }
+
+    }
+
+}
@@ -0,0 +1,30 @@
+package ru.mrbrikster.chatty.moderation;
+
+/**
+ * Lazily computed normalized views of one message,
+ * shared by moderation methods checking the same message
+ */
+final class NormalizedViews {
+
+    private final String message;
+    private final TextNormalizer.Normalized[] views = new TextNormalizer.Normalized[TextNormalizer.Mode.values().length];
+
+    NormalizedViews(String message) {
+        this.message = message;
+    }
+
+    boolean isOf(String message) {
+        return this.message.equals(message);
+    }
+
+    TextNormalizer.Normalized get(TextNormalizer.Mode mode) {
+        TextNormalizer.Normalized view = views[mode.ordinal()];
+
+        if (view == null) {
+            view = views[mode.ordinal()] = TextNormalizer.normalize(message, mode);
+        }
+
+        return view;
+    }
+
+}
@@ -0,0 +1,89 @@
+package ru.mrbrikster.chatty.moderation;
+
+import org.bukkit.Bukkit;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fingerprints of recent messages of online players, kept in a fixed-size ring per player
+ */
+class RepeatHistory implements Listener {
+
+    private final Map<UUID, Ring> rings = new ConcurrentHashMap<>();
+
+    RepeatHistory(JavaPlugin javaPlugin) {
+        Bukkit.getPluginManager().registerEvents(this, javaPlugin);
+    }
+
+    /**
+     * Checks if the message repeats one of recent messages of the player, and remembers it
+     * @param player player UUID
+     * @param text normalized message
+     * @param rule repeat moderation settings
+     * @return true if the same or similar message was sent recently
+     */
+    boolean check(UUID player, String text, RepeatModerationMethod.Rule rule) {
+        int length = MessageFingerprint.length(text);
+
+        // Short texts are compared as is, collapsed they differ in just a few characters or none at all
+        long hash = length == 0 || length < rule.getMinLength()
+                ? MessageFingerprint.rawHash(text) : MessageFingerprint.hash(text);
+        long simHash = length >= rule.getMinLength() ? MessageFingerprint.simHash(text) : 0;
+
+        Ring ring = rings.compute(player, (uuid, current) ->
+                current == null || current.hashes.length != rule.getHistory() ? new Ring(rule.getHistory()) : current);
+
+        long now = System.currentTimeMillis();
+        synchronized (ring) {
+            boolean repeated = false;
+
+            for (int i = 0; i < ring.hashes.length && !repeated; i++) {
+                if (ring.times[i] == 0 || now - ring.times[i] > rule.getWindow()) {
+                    continue;
+                }
+
+                repeated = ring.hashes[i] == hash
+                        || length >= rule.getMinLength() && ring.lengths[i] >= rule.getMinLength()
+                        && Long.bitCount(ring.simHashes[i] ^ simHash) <= rule.getDistance();
+            }
+
+            ring.hashes[ring.next] = hash;
+            ring.simHashes[ring.next] = simHash;
+            ring.lengths[ring.next] = length;
+            ring.times[ring.next] = now;
+            ring.next = (ring.next + 1) % ring.hashes.length;
+
+            return repeated;
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        rings.remove(event.getPlayer().getUniqueId());
+    }
+
+    private static final class Ring {
+
+        private final long[] hashes;
+        private final long[] simHashes;
+        private final int[] lengths;
+        private final long[] times;
+        private int next;
+
+        private Ring(int size) {
+            this.hashes = new long[size];
+            this.simHashes = new long[size];
+            this.lengths = new int[size];
+            this.times = new long[size];
+        }
+
+    }
+
+}
@@ -0,0 +1,77 @@
+package ru.mrbrikster.chatty.moderation;
+
+import lombok.Getter;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import ru.mrbrikster.baseplugin.config.ConfigurationNode;
+
+public class RepeatModerationMethod extends ModerationMethod {
+
+    private final Rule rule;
+    private final RepeatHistory history;
+    private final CommandSender sender;
+
+    private boolean checked = false, result = false;
+
+    RepeatModerationMethod(Rule rule, RepeatHistory history, CommandSender sender, String message) {
+        super(message);
+
+        this.rule = rule;
+        this.history = history;
+        this.sender = sender;
+    }
+
+    @Override
+    public String getEditedMessage() {
+        return message;
+    }
+
+    @Override
+    public boolean isBlocked() {
+        if (!checked) {
+            this.result = sender instanceof Player
+                    && history.check(((Player) sender).getUniqueId(), getNormalized(TextNormalizer.Mode.SWEARS).getText(), rule);
+            this.checked = true;
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean isUseBlock() {
+        return rule.useBlock;
+    }
+
+    @Override
+    public String getLogPrefix() {
+        return "REPEAT";
+    }
+
+    @Override
+    public String getWarningMessageKey() {
+        return "repeat-found";
+    }
+
+    /**
+     * Compiled repeat moderation settings, shared by all messages
+     */
+    @Getter
+    static final class Rule {
+
+        private final int history;
+        private final long window;
+        private final int distance;
+        private final int minLength;
+        private final boolean useBlock;
+
+        Rule(ConfigurationNode configurationNode) {
+            this.history = Math.max(1, configurationNode.getNode("history").getAsInt(5));
+            this.window = Math.max(1, configurationNode.getNode("window").getAsLong(60)) * 1000;
+            this.distance = configurationNode.getNode("distance").getAsInt(8);
+            this.minLength = configurationNode.getNode("min-length").getAsInt(10);
+            this.useBlock = configurationNode.getNode("block").getAsBoolean(true);
+        }
+
+    }
+
+}
@@ -0,0 +1,307 @@
+package ru.mrbrikster.chatty.moderation;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled swears and whitelist lists.
+ *
+ * Plain words are matched with a single Aho-Corasick automaton over the normalized view
+ * of the message (see {@link TextNormalizer}), so the cost of matching depends
+ * on the message length, not on the number of words. Lines with regular expression
+ * syntax are kept in one residual pattern. Whitelisted words are looked up in a hash set.
+ *
+ * Dictionary is immutable and shared between chat threads,
+ * changes are made by building a new dictionary.
+ */
+final class SwearDictionary {
+
+    static final SwearDictionary EMPTY = new SwearDictionary(Collections.emptyList(), Collections.emptyList());
+
+    private static final String REGEX_CHARACTERS = "\\^$.|?*+()[]{}";
+
+    // Automaton states: sorted transition keys and targets, failure links
+    // and the length of the longest word ending in a state (0 if none)
+    private final char[][] keys;
+    private final int[][] targets;
+    private final int[] failure;
+    private final int[] output;
+
+    private final Pattern residualPattern;
+
+    private final Set<String> whitelistWords;
+    private final List<Pattern> whitelistPatterns;
+
+    SwearDictionary(@NotNull List<String> swears, @NotNull List<String> whitelist) {
+        List<String> words = new ArrayList<>();
+        StringBuilder residual = new StringBuilder();
+        for (String swear : swears) {
+            if (swear.trim().isEmpty()) {
+                continue;
+            }
+
+            if (isRegex(swear)) {
+                if (residual.length() != 0) {
+                    residual.append('|');
+                }
+
+                residual.append(swear);
+            } else {
+                String word = TextNormalizer.normalize(swear, TextNormalizer.Mode.SWEARS).getText();
+
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+
+        this.residualPattern = residual.length() == 0 ? null : Pattern.compile(residual.toString(), Pattern.CASE_INSENSITIVE);
+
+        Set<String> whitelistWords = new HashSet<>();
+        List<Pattern> whitelistPatterns = new ArrayList<>();
+        for (String word : whitelist) {
+            if (word.isEmpty()) {
+                continue;
+            }
+
+            if (isRegex(word)) {
+                whitelistPatterns.add(Pattern.compile(word.toLowerCase(), Pattern.CASE_INSENSITIVE));
+            } else {
+                whitelistWords.add(TextNormalizer.normalize(word, TextNormalizer.Mode.SWEARS).getText());
+            }
+        }
+
+        this.whitelistWords = whitelistWords;
+        this.whitelistPatterns = whitelistPatterns;
+
+        // Trie
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        trie.add(new TreeMap<>());
+
+        int[] output = new int[words.stream().mapToInt(String::length).sum() + 1];
+        for (String word : words) {
+            int state = 0;
+            for (int i = 0; i < word.length(); i++) {
+                Integer next = trie.get(state).get(word.charAt(i));
+
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    trie.get(state).put(word.charAt(i), next);
+                }
+
+                state = next;
+            }
+
+            output[state] = word.length();
+        }
+
+        int size = trie.size();
+        this.keys = new char[size][];
+        this.targets = new int[size][];
+        this.failure = new int[size];
+        this.output = Arrays.copyOf(output, size);
+
+        for (int state = 0; state < size; state++) {
+            TreeMap<Character, Integer> transitions = trie.get(state);
+            keys[state] = new char[transitions.size()];
+            targets[state] = new int[transitions.size()];
+
+            int i = 0;
+            for (Map.Entry<Character, Integer> entry : transitions.entrySet()) {
+                keys[state][i] = entry.getKey();
+                targets[state][i++] = entry.getValue();
+            }
+        }
+
+        // Failure links, breadth-first so that links of shorter prefixes are ready
+        Deque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            queue.add(child);
+        }
+
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+
+            for (int i = 0; i < keys[state].length; i++) {
+                int child = targets[state][i];
+                int link = failure[state];
+
+                int next;
+                while ((next = transition(link, keys[state][i])) < 0 && link != 0) {
+                    link = failure[link];
+                }
+
+                failure[child] = next < 0 || next == child ? 0 : next;
+                this.output[child] = Math.max(this.output[child], this.output[failure[child]]);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Replaces words containing swears with the replacement in a single pass
+     * @param normalized message normalized with {@link TextNormalizer.Mode#SWEARS} mode
+     * @param replacement swear replacement
+     * @param found list to add found swear words to
+     * @return edited message, or the same message if no swears were found
+     */
+    @NotNull
+    String censor(@NotNull TextNormalizer.Normalized normalized, @NotNull String replacement, @NotNull List<String> found) {
+        Spans spans = new Spans();
+
+        String message = normalized.getOriginal();
+        String text = normalized.getText();
+
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+
+            int next;
+            while ((next = transition(state, c)) < 0 && state != 0) {
+                state = failure[state];
+            }
+
+            state = next < 0 ? 0 : next;
+
+            if (output[state] > 0) {
+                spans.add(message, normalized.originalStart(i + 1 - output[state]), normalized.originalEnd(i + 1));
+            }
+        }
+
+        if (residualPattern != null) {
+            Matcher matcher = residualPattern.matcher(message);
+
+            while (matcher.find()) {
+                if (!matcher.group().trim().isEmpty()) {
+                    spans.add(message, matcher.start(), matcher.end());
+                }
+            }
+        }
+
+        if (spans.size == 0) {
+            return message;
+        }
+
+        spans.sort();
+
+        StringBuilder builder = null;
+        int previousEnd = 0;
+        for (int i = 0; i < spans.size; i++) {
+            int start = spans.start(i), end = spans.end(i);
+
+            // Merges overlapping words, it is possible for swears with spaces
+            while (i + 1 < spans.size && spans.start(i + 1) < end) {
+                end = Math.max(end, spans.end(++i));
+            }
+
+            String swear = message.substring(start, end);
+
+            if (isWhitelisted(swear)) {
+                continue;
+            }
+
+            found.add(swear);
+
+            if (builder == null) {
+                builder = new StringBuilder(message.length());
+            }
+
+            builder.append(message, previousEnd, start).append(replacement);
+            previousEnd = end;
+        }
+
+        if (builder == null) {
+            return message;
+        }
+
+        return builder.append(message, previousEnd, message.length()).toString();
+    }
+
+    /**
+     * Checks that the word can be added to whitelist
+     * @param word whitelisted word or regular expression
+     * @throws PatternSyntaxException if the word is an invalid regular expression
+     */
+    static void validateWhitelisted(@NotNull String word) throws PatternSyntaxException {
+        if (isRegex(word)) {
+            Pattern.compile(word.toLowerCase(), Pattern.CASE_INSENSITIVE);
+        }
+    }
+
+    private boolean isWhitelisted(String swear) {
+        if (whitelistWords.contains(TextNormalizer.normalize(swear, TextNormalizer.Mode.SWEARS).getText())) {
+            return true;
+        }
+
+        for (Pattern pattern : whitelistPatterns) {
+            if (pattern.matcher(swear).matches()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private int transition(int state, char c) {
+        int index = Arrays.binarySearch(keys[state], c);
+        return index < 0 ? -1 : targets[state][index];
+    }
+
+    private static boolean isRegex(String line) {
+        for (int i = 0; i < line.length(); i++) {
+            if (REGEX_CHARACTERS.indexOf(line.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Space-separated words containing matches, encoded as start and end in one long
+     */
+    private static final class Spans {
+
+        private long[] spans = new long[4];
+        private int size;
+
+        private void add(String message, int start, int end) {
+            int wordStart = message.lastIndexOf(' ', start) + 1;
+            int wordEnd = message.indexOf(' ', end);
+
+            if (wordEnd < 0) {
+                wordEnd = message.length();
+            }
+
+            long span = ((long) wordStart << 32) | wordEnd;
+            if (size > 0 && spans[size - 1] == span) {
+                return;
+            }
+
+            if (size == spans.length) {
+                spans = Arrays.copyOf(spans, size * 2);
+            }
+
+            spans[size++] = span;
+        }
+
+        private void sort() {
+            Arrays.sort(spans, 0, size);
+        }
+
+        private int start(int i) {
+            return (int) (spans[i] >>> 32);
+        }
+
+        private int end(int i) {
+            return (int) spans[i];
+        }
+
+    }
+
+}
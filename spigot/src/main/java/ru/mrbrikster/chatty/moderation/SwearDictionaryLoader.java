@@ -0,0 +1,165 @@
+package ru.mrbrikster.chatty.moderation;
+
+import com.google.common.io.Files;
+import org.bukkit.plugin.java.JavaPlugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Loads "swears/swears.txt" and "swears/whitelist.txt" to {@link SwearDictionary}.
+ *
+ * The directory is watched with {@link WatchService}, so changed files are applied within a second,
+ * without "/chatty reload". Dictionaries are compiled on a separate thread and published
+ * with a volatile write, chat threads keep using the previous dictionary until then.
+ */
+class SwearDictionaryLoader {
+
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private final Logger logger;
+    private final File directory;
+    private final File swearsFile;
+    private final File whitelistFile;
+
+    private final ExecutorService executor;
+    private WatchService watchService;
+    private Thread watcherThread;
+
+    SwearDictionaryLoader(JavaPlugin javaPlugin) {
+        this.logger = javaPlugin.getLogger();
+        this.directory = new File(javaPlugin.getDataFolder(), "swears");
+        this.swearsFile = new File(directory, "swears.txt");
+        this.whitelistFile = new File(directory, "whitelist.txt");
+
+        if (!directory.exists()) {
+            directory.mkdir();
+        }
+
+        createFile(swearsFile);
+        createFile(whitelistFile);
+
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Chatty Swears Loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+            directory.toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+
+            this.watcherThread = new Thread(this::watch, "Chatty Swears Watcher");
+            this.watcherThread.setDaemon(true);
+            this.watcherThread.start();
+        } catch (IOException e) {
+            logger.warning("Cannot watch \"swears\" directory, use \"/chatty reload\" to apply changes: " + e.getMessage());
+        }
+
+        SwearModerationMethod.setLoader(this);
+    }
+
+    /**
+     * Loads dictionary on the current thread
+     */
+    void load() {
+        try {
+            SwearDictionary dictionary = new SwearDictionary(
+                    Collections.unmodifiableList(Files.readLines(swearsFile, StandardCharsets.UTF_8)),
+                    Collections.unmodifiableList(Files.readLines(whitelistFile, StandardCharsets.UTF_8)));
+
+            SwearModerationMethod.setDictionary(dictionary);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (PatternSyntaxException e) {
+            logger.warning("Invalid regular expression in \"swears\" directory, previous swears are used: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads dictionary on the loader thread
+     */
+    void reload() {
+        try {
+            executor.execute(this::load);
+        } catch (RejectedExecutionException ignored) {
+            // Loader is closed
+        }
+    }
+
+    File getWhitelistFile() {
+        return whitelistFile;
+    }
+
+    void close() {
+        SwearModerationMethod.setLoader(null);
+
+        if (watcherThread != null) {
+            watcherThread.interrupt();
+
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        executor.shutdown();
+    }
+
+    private void watch() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+
+                boolean changed = false;
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Object context = event.context();
+
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || context instanceof Path && isDictionaryFile((Path) context)) {
+                            changed = true;
+                        }
+                    }
+
+                    key.reset();
+
+                    // Editors save files with several events, they are applied at once
+                    key = changed ? watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS) : null;
+                }
+
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+        }
+    }
+
+    private boolean isDictionaryFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.equals(swearsFile.getName()) || name.equals(whitelistFile.getName());
+    }
+
+    private void createFile(File file) {
+        if (!file.exists()) {
+            try {
+                file.createNewFile();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+}
@@ -1,8 +1,6 @@
 package ru.mrbrikster.chatty.moderation;
 
 import com.google.common.io.Files;
-import lombok.Getter;
-import org.bukkit.plugin.java.JavaPlugin;
 import ru.mrbrikster.baseplugin.config.ConfigurationNode;
 import ru.mrbrikster.chatty.util.TextUtil;
 
@@ -11,83 +9,60 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.regex.PatternSyntaxException;
 
 public class SwearModerationMethod extends ModerationMethod {
 
-    private final String replacement;
+    private final Rule rule;
     private final List<String> words;
-    @Getter private final boolean useBlock;
 
-    private static Pattern swearsPattern;
-    private static List<Pattern> swearsWhitelist = new ArrayList<>();
-    private static File swearsDirectory;
-    private static File swearsFile;
-    private static File whitelistFile;
+    private static volatile SwearDictionary dictionary = SwearDictionary.EMPTY;
+    private static volatile SwearDictionaryLoader loader;
+    private static volatile long dictionaryVersion;
     private String editedMessage;
 
-    SwearModerationMethod(ConfigurationNode configurationNode, String message) {
+    SwearModerationMethod(Rule rule, String message) {
         super(message);
 
-        this.replacement = TextUtil.stylish(configurationNode.getNode("replacement").getAsString("<swear>"));
+        this.rule = rule;
         this.words = new ArrayList<>();
-        this.useBlock = configurationNode.getNode("block").getAsBoolean(true);
     }
 
-    static void init(JavaPlugin javaPlugin) {
-        SwearModerationMethod.swearsDirectory = new File(javaPlugin.getDataFolder(), "swears");
-        SwearModerationMethod.swearsFile = new File(swearsDirectory, "swears.txt");
-        SwearModerationMethod.whitelistFile = new File(swearsDirectory, "whitelist.txt");
-
-        if (!swearsDirectory.exists()) {
-            swearsDirectory.mkdir();
-        }
-
-        if (!swearsFile.exists()) {
-            try {
-                swearsFile.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+    public static File getWhitelistFile() {
+        SwearDictionaryLoader swearDictionaryLoader = loader;
+        return swearDictionaryLoader == null ? null : swearDictionaryLoader.getWhitelistFile();
+    }
 
-        if (!whitelistFile.exists()) {
-            try {
-                whitelistFile.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+    static void setLoader(SwearDictionaryLoader swearDictionaryLoader) {
+        loader = swearDictionaryLoader;
+    }
 
-        try {
-            StringBuilder pattern = new StringBuilder();
-            for (String swear : Files.readLines(swearsFile, StandardCharsets.UTF_8)) {
-                if (swear.isEmpty())
-                    continue;
-
-                if (pattern.length() == 0) {
-                    pattern.append(swear);
-                } else {
-                    pattern.append("|").append(swear);
-                }
-            }
-
-            SwearModerationMethod.swearsPattern = Pattern.compile(pattern.toString(), Pattern.CASE_INSENSITIVE);
-            SwearModerationMethod.swearsWhitelist = Files.readLines(whitelistFile, StandardCharsets.UTF_8).stream().map(whitelistPattern
-                    -> Pattern.compile(whitelistPattern.toLowerCase(), Pattern.CASE_INSENSITIVE)).collect(Collectors.toList());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    static long getDictionaryVersion() {
+        return dictionaryVersion;
     }
 
-    public static File getWhitelistFile() {
-        return whitelistFile;
+    static synchronized void setDictionary(SwearDictionary swearDictionary) {
+        dictionary = swearDictionary;
+        dictionaryVersion++;
     }
 
-    public static void addWord(Pattern pattern) {
-        swearsWhitelist.add(pattern);
+    /**
+     * Appends the word to whitelist file.
+     * Dictionary is rebuilt on the loader thread, messages are checked with the previous one until then
+     * @param word whitelisted word or regular expression
+     * @throws PatternSyntaxException if the word is an invalid regular expression, the file is not changed then
+     * @throws IOException if the file cannot be written
+     */
+    public static void addWord(String word) throws IOException {
+        SwearDictionary.validateWhitelisted(word);
+
+        SwearDictionaryLoader swearDictionaryLoader = loader;
+        if (swearDictionaryLoader == null) {
+            throw new IOException("Swear moderation is disabled");
+        }
+
+        Files.append("\n" + word, swearDictionaryLoader.getWhitelistFile(), StandardCharsets.UTF_8);
+        swearDictionaryLoader.reload();
     }
 
     public List<String> getWords() {
@@ -99,39 +74,15 @@ public class SwearModerationMethod extends ModerationMethod {
         if (editedMessage != null)
             return editedMessage;
 
-        this.editedMessage = message;
-        Matcher matcher = swearsPattern.matcher(message.toLowerCase());
-
-        int previousWordStart = -1;
-        int previousWordEnd = -1;
-        while (matcher.find()) {
-            if (matcher.group().trim().isEmpty()) {
-                continue;
-            }
-
-            int[] wordStartAndEndArray = getWord(message, matcher.start(), matcher.end());
-
-            if (previousWordStart == wordStartAndEndArray[0] && previousWordEnd == wordStartAndEndArray[1]) {
-                continue;
-            }
-
-            String swear = message.substring(previousWordStart = wordStartAndEndArray[0], previousWordEnd = wordStartAndEndArray[1]);
-
-            boolean whitelisted = false;
-            for (Pattern pattern : swearsWhitelist) {
-                if (pattern.matcher(swear).matches())
-                    whitelisted = true;
-            }
-
-            if (!whitelisted) {
-                words.add(swear);
-                editedMessage = editedMessage.replaceAll(Pattern.quote(swear), replacement);
-            }
-        }
-
+        this.editedMessage = dictionary.censor(getNormalized(TextNormalizer.Mode.SWEARS), rule.replacement, words);
         return editedMessage;
     }
 
+    @Override
+    public boolean isUseBlock() {
+        return rule.useBlock;
+    }
+
     @Override
     public boolean isBlocked() {
         return !getEditedMessage().equals(message);
@@ -147,26 +98,19 @@ public class SwearModerationMethod extends ModerationMethod {
         return "swear-found";
     }
 
-    private int[] getWord(String message, int start, int end) {
-        int wordStart = 0;
-        int wordEnd = message.length();
+    /**
+     * Compiled swear moderation settings, shared by all messages
+     */
+    static final class Rule {
 
-        char[] chars = message.toCharArray();
-        for (int i = start; i >= 0; i--) {
-            if (chars[i] == ' ') {
-                wordStart = i + 1;
-                break;
-            }
-        }
+        private final String replacement;
+        private final boolean useBlock;
 
-        for (int i = end; i < message.length(); i++) {
-            if (chars[i] == ' ') {
-                wordEnd = i;
-                break;
-            }
+        Rule(ConfigurationNode configurationNode) {
+            this.replacement = TextUtil.stylish(configurationNode.getNode("replacement").getAsString("<swear>"));
+            this.useBlock = configurationNode.getNode("block").getAsBoolean(true);
         }
 
-        return new int[] {wordStart, wordEnd};
     }
 
 }
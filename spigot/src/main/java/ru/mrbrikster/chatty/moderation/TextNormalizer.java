@@ -0,0 +1,154 @@
+package ru.mrbrikster.chatty.moderation;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.text.Normalizer;
+
+/**
+ * Folds text to a normalized view used by moderation methods:
+ * lower case, without diacritics and invisible characters,
+ * with look-alike Cyrillic, Greek and fullwidth letters replaced by Latin ones.
+ * {@link Mode#SWEARS} also folds leet digits and removes separators, so "b.a.d" and "8@d" match "bad".
+ *
+ * Every character is folded to one character or removed, so the normalized view
+ * keeps offsets of its characters in the original text.
+ */
+public final class TextNormalizer {
+
+    private static final char REMOVE = '\uFFFF';
+
+    private static final char[] TABLE = new char[Character.MAX_VALUE + 1];
+    private static final char[] SWEARS_TABLE = new char[128];
+
+    private static final String CONFUSABLES =
+            // Cyrillic
+            "аaвbеeёeкkмmнhоoрpсcтtуyхxѕsіiїiјjԁdһhԛqԝw" +
+            // Greek
+            "αaβbεeηnιiκkνvοoρpτtυuχxωw";
+
+    private static final String LEET = "0o1i3e4a5s7t8b@a$s";
+
+    private static final String SEPARATORS = ".,-_*'\"`~^+=|/\\:;";
+
+    static {
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            TABLE[c] = fold((char) c);
+        }
+
+        for (int i = 0; i < CONFUSABLES.length(); i += 2) {
+            TABLE[CONFUSABLES.charAt(i)] = CONFUSABLES.charAt(i + 1);
+            TABLE[Character.toUpperCase(CONFUSABLES.charAt(i))] = CONFUSABLES.charAt(i + 1);
+        }
+
+        System.arraycopy(TABLE, 0, SWEARS_TABLE, 0, SWEARS_TABLE.length);
+
+        for (int i = 0; i < LEET.length(); i += 2) {
+            SWEARS_TABLE[LEET.charAt(i)] = LEET.charAt(i + 1);
+        }
+
+        for (char separator : SEPARATORS.toCharArray()) {
+            SWEARS_TABLE[separator] = REMOVE;
+        }
+
+        // Fullwidth forms are folded to ASCII, then by the mode table
+        for (char c = '\uFF01'; c <= '\uFF5E'; c++) {
+            TABLE[c] = TABLE[c - '\uFF01' + '!'];
+        }
+    }
+
+    private TextNormalizer() {
+    }
+
+    /**
+     * Returns normalized view of the text
+     * @param text original text
+     * @param mode normalization mode
+     * @return normalized view with offsets in the original text
+     */
+    @NotNull
+    public static Normalized normalize(@NotNull String text, @NotNull Mode mode) {
+        int length = text.length();
+        char[] chars = new char[length];
+        int[] offsets = new int[length + 1];
+
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            char folded = TABLE[c];
+
+            if (mode == Mode.SWEARS && folded < 128) {
+                folded = SWEARS_TABLE[folded];
+            }
+
+            if (folded != REMOVE) {
+                chars[size] = folded;
+                offsets[size++] = i;
+            }
+        }
+
+        offsets[size] = length;
+        return new Normalized(text, new String(chars, 0, size), offsets);
+    }
+
+    private static char fold(char c) {
+        int type = Character.getType(c);
+
+        if (type == Character.NON_SPACING_MARK || type == Character.ENCLOSING_MARK || type == Character.FORMAT) {
+            return REMOVE;
+        }
+
+        char lower = Character.toLowerCase(c);
+
+        // Diacritics of Latin, Greek and Cyrillic letters
+        if (lower >= '\u00C0' && lower < '\u0530' && Character.isLetter(lower)) {
+            String decomposed = Normalizer.normalize(String.valueOf(lower), Normalizer.Form.NFD);
+
+            if (decomposed.length() > 1 && Character.getType(decomposed.charAt(1)) == Character.NON_SPACING_MARK) {
+                return decomposed.charAt(0);
+            }
+        }
+
+        return lower;
+    }
+
+    public enum Mode {
+
+        SWEARS,
+        ADVERTISEMENT
+
+    }
+
+    public static final class Normalized {
+
+        @Getter private final String original;
+        @Getter private final String text;
+        private final int[] offsets;
+
+        private Normalized(String original, String text, int[] offsets) {
+            this.original = original;
+            this.text = text;
+            this.offsets = offsets;
+        }
+
+        /**
+         * Returns start of the range in original text
+         * @param start start index in normalized text
+         * @return start index in original text
+         */
+        public int originalStart(int start) {
+            return offsets[start];
+        }
+
+        /**
+         * Returns end of the range in original text
+         * @param end end index (exclusive) in normalized text
+         * @return end index (exclusive) in original text
+         */
+        public int originalEnd(int end) {
+            return end == 0 ? 0 : offsets[end - 1] + 1;
+        }
+
+    }
+
+}
@@ -0,0 +1,173 @@
+package ru.mrbrikster.chatty.storage;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.jetbrains.annotations.NotNull;
+import ru.mrbrikster.chatty.Chatty;
+import ru.mrbrikster.chatty.reflection.Reflection;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory index of ignore lists of online players.
+ * Keeps both directions: players ignored by a player and online players ignoring a player,
+ * so an ignore check is a single set lookup.
+ * Names are stored in lower case, the same way as in "ignore" property.
+ */
+public class IgnoreIndex implements Listener {
+
+    private final StorageBackend storage;
+
+    private final Map<String, Set<String>> ignored = new ConcurrentHashMap<>();
+    private final Map<String, Set<String>> ignoredBy = new ConcurrentHashMap<>();
+
+    public IgnoreIndex(Chatty chatty) {
+        this.storage = chatty.getExact(StorageBackend.class);
+
+        for (Player player : Reflection.getOnlinePlayers()) {
+            storage.whenLoaded(player, () -> load(player));
+        }
+
+        Bukkit.getPluginManager().registerEvents(this, chatty);
+    }
+
+    /**
+     * Checks if recipient ignores sender
+     * @param recipient message recipient
+     * @param sender message sender
+     * @return true if recipient ignores sender
+     */
+    public boolean isIgnore(@NotNull CommandSender recipient, @NotNull CommandSender sender) {
+        if (!(recipient instanceof Player)) {
+            return false;
+        }
+
+        Set<String> ignoredPlayers = ignored.get(recipient.getName().toLowerCase());
+        return ignoredPlayers != null && ignoredPlayers.contains(sender.getName().toLowerCase());
+    }
+
+    /**
+     * Returns names of online players that ignore the sender
+     * @param sender message sender
+     * @return unmodifiable set of lower case names, empty if nobody ignores the sender
+     */
+    @NotNull
+    public Set<String> getIgnoredBy(@NotNull CommandSender sender) {
+        Set<String> players = ignoredBy.get(sender.getName().toLowerCase());
+        return players == null ? Collections.emptySet() : Collections.unmodifiableSet(players);
+    }
+
+    /**
+     * Returns names of players ignored by the player
+     * @param player player to get ignore list of
+     * @return unmodifiable set of lower case names
+     */
+    @NotNull
+    public Set<String> getIgnored(@NotNull Player player) {
+        Set<String> players = ignored.get(player.getName().toLowerCase());
+        return players == null ? Collections.emptySet() : Collections.unmodifiableSet(players);
+    }
+
+    /**
+     * Checks if ignore list of the player is loaded from storage, it must not be changed before that
+     * @param player player to check
+     * @return true if ignore list is loaded
+     */
+    public boolean isLoaded(@NotNull Player player) {
+        return storage.isLoaded(player);
+    }
+
+    /**
+     * Changes ignore list of the player and saves it to storage
+     * @param player player to change ignore list of
+     * @param ignoreList names of ignored players
+     * @return false if ignore list is not loaded yet, and it is not changed
+     */
+    public boolean setIgnored(@NotNull Player player, @NotNull Collection<String> ignoreList) {
+        // Stored list would be replaced with a list based on the empty one
+        if (!storage.isLoaded(player)) {
+            return false;
+        }
+
+        Set<String> names = new LinkedHashSet<>();
+        for (String name : ignoreList) {
+            names.add(name.toLowerCase());
+        }
+
+        storage.setStringList(player, "ignore", names);
+
+        unload(player);
+        index(player.getName().toLowerCase(), names);
+        return true;
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent event) {
+        Player player = event.getPlayer();
+        storage.whenLoaded(player, () -> load(player));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        unload(event.getPlayer());
+    }
+
+    private void load(Player player) {
+        // Player has quit before the data was loaded
+        if (!player.isOnline()) {
+            return;
+        }
+
+        Set<String> names = new HashSet<>();
+        for (String name : storage.getStringList(player, "ignore")) {
+            names.add(name.toLowerCase());
+        }
+
+        index(player.getName().toLowerCase(), names);
+    }
+
+    private void index(String player, Set<String> names) {
+        if (names.isEmpty()) {
+            return;
+        }
+
+        Set<String> ignoredPlayers = ConcurrentHashMap.newKeySet();
+        ignoredPlayers.addAll(names);
+        ignored.put(player, ignoredPlayers);
+
+        for (String name : names) {
+            ignoredBy.compute(name, (key, players) -> {
+                if (players == null) {
+                    players = ConcurrentHashMap.newKeySet();
+                }
+
+                players.add(player);
+                return players;
+            });
+        }
+    }
+
+    private void unload(Player player) {
+        String name = player.getName().toLowerCase();
+        Set<String> ignoredPlayers = ignored.remove(name);
+
+        if (ignoredPlayers == null) {
+            return;
+        }
+
+        for (String ignoredPlayer : ignoredPlayers) {
+            ignoredBy.computeIfPresent(ignoredPlayer, (key, players) -> {
+                players.remove(name);
+                return players.isEmpty() ? null : players;
+            });
+        }
+    }
+
+}
@@ -0,0 +1,767 @@
+package ru.mrbrikster.chatty.storage;
+
+import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import ru.mrbrikster.baseplugin.config.Configuration;
+import ru.mrbrikster.chatty.Chatty;
+import ru.mrbrikster.chatty.reflection.Reflection;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps player properties in memory as the single source of truth.
+ * Reads are hash lookups, every change is appended to "storage.journal"
+ * by the journal thread, which syncs many records to disk at once.
+ * Every "general.storage.flush-interval" seconds and on plugin disable
+ * the journal is compacted: changed data is written to storage files
+ * through temporary files and the journal is truncated.
+ * Records left in the journal after a crash are replayed on startup.
+ *
+ * Data is stored either in the single "storage.json" file or,
+ * when "general.storage.per-player" is enabled, in one file per player
+ * inside "storage" directory. Per-player files are loaded on pre-login
+ * and unloaded when the player quits or the login is rejected.
+ * Changes of offline players are kept in memory only until they are written.
+ */
+public class JsonStorage implements StorageBackend, Listener {
+
+    private static final Gson GSON = new GsonBuilder().setPrettyPrinting().create();
+    private static final JsonParser JSON_PARSER = new JsonParser();
+    private static final int MIGRATION_BATCH_SIZE = 1000;
+    private static final String JOURNAL_WAKEUP = "";
+
+    private final Map<String, Map<String, JsonElement>> players = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, JsonElement>> unloadingPlayers = new ConcurrentHashMap<>();
+    private final Set<String> dirtyPlayers = ConcurrentHashMap.newKeySet();
+    private final Object flushLock = new Object();
+    private final Object journalLock = new Object();
+    private final BlockingQueue<String> journalQueue = new LinkedBlockingQueue<>();
+    private final PlayerSessions sessions = new PlayerSessions(this::unloadPlayer);
+
+    // Players loaded in the background and tasks waiting for them, guarded by itself
+    private final Map<String, List<Runnable>> loadTasks = new HashMap<>();
+
+    private final Chatty chatty;
+    private final File storageFile;
+    private final File playersDirectory;
+    private final File journalFile;
+    private final Configuration configuration;
+    private final boolean perPlayer;
+    private final long compactionInterval;
+    private final Thread journalThread;
+
+    private FileChannel journalChannel;
+    private volatile boolean running = true;
+
+    public JsonStorage(Chatty chatty) {
+        this.chatty = chatty;
+        this.configuration = chatty.getExact(Configuration.class);
+        this.storageFile = new File(chatty.getDataFolder(), "storage.json");
+        this.playersDirectory = new File(chatty.getDataFolder(), "storage");
+        this.journalFile = new File(chatty.getDataFolder(), "storage.journal");
+        this.perPlayer = configuration.getNode("general.storage.per-player").getAsBoolean(false);
+
+        if (perPlayer) {
+            if (!playersDirectory.exists() && !playersDirectory.mkdirs()) {
+                chatty.getLogger().warning("Cannot create \"storage\" directory");
+            }
+
+            if (storageFile.exists()) {
+                migrate();
+            }
+
+            // Players that joined before the plugin was enabled
+            for (Player player : Reflection.getOnlinePlayers()) {
+                sessions.join(getKey(player));
+                loadPlayer(getKey(player));
+            }
+
+            Bukkit.getPluginManager().registerEvents(this, chatty);
+        } else {
+            if (!storageFile.exists()) {
+                try {
+                    if (!storageFile.createNewFile()) {
+                        throw new IOException("Cannot create storage.json");
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+
+            load();
+        }
+
+        try {
+            this.journalChannel = FileChannel.open(journalFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            chatty.getLogger().warning("Cannot open storage.journal, changes will be saved only on compaction");
+            e.printStackTrace();
+        }
+
+        if (replayJournal()) {
+            compact();
+        }
+
+        this.compactionInterval = TimeUnit.SECONDS.toMillis(
+                Math.max(1, configuration.getNode("general.storage.flush-interval").getAsLong(30)));
+        this.journalThread = new Thread(this::runJournal, "Chatty Storage Journal");
+        this.journalThread.setDaemon(true);
+        this.journalThread.start();
+    }
+
+    private void setProperty(String player, String property, JsonElement value) {
+        // Journal records must be queued in the same order as changes are applied
+        synchronized (journalLock) {
+            if (!applyProperty(player, property, value)) {
+                return;
+            }
+
+            JsonObject record = new JsonObject();
+            record.addProperty("k", player);
+            record.addProperty("p", property);
+
+            if (value != null) {
+                record.add("v", value);
+            }
+
+            journalQueue.add(record.toString());
+        }
+    }
+
+    private boolean applyProperty(String player, String property, JsonElement value) {
+        if (!perPlayer) {
+            return applyProperty(value == null ? players.get(player)
+                    : players.computeIfAbsent(player, key -> new ConcurrentHashMap<>()), player, property, value);
+        }
+
+        // Compaction drops unloaded players without changes, so it must not run between the lookup and the change
+        synchronized (unloadingPlayers) {
+            Map<String, JsonElement> properties = getCachedProperties(player);
+
+            if (properties != null) {
+                return applyProperty(properties, player, property, value);
+            }
+        }
+
+        // Offline player, or online player whose data is not loaded yet,
+        // is kept until the change is written, compaction must not drop it in between
+        synchronized (flushLock) {
+            Map<String, JsonElement> properties = getCachedProperties(player);
+
+            if (properties == null) {
+                properties = readProperties(player);
+                unloadingPlayers.put(player, properties);
+            }
+
+            return applyProperty(properties, player, property, value);
+        }
+    }
+
+    private boolean applyProperty(Map<String, JsonElement> properties, String player, String property, JsonElement value) {
+        if (value == null) {
+            if (properties == null || properties.remove(property) == null) {
+                return false;
+            }
+        } else {
+            properties.put(property, value.deepCopy());
+        }
+
+        dirtyPlayers.add(player);
+        return true;
+    }
+
+    @Override
+    public void setProperty(Player player, String property, JsonElement value) {
+        setProperty(getKey(player), property, value);
+    }
+
+    private Optional<JsonElement> getProperty(String player, String property) {
+        Map<String, JsonElement> properties = getPlayerProperties(player);
+
+        if (properties == null) {
+            return Optional.empty();
+        }
+
+        JsonElement value = properties.get(property);
+
+        if (value == null) {
+            return Optional.empty();
+        }
+
+        // Primitives are immutable, everything else is copied
+        // so callers cannot modify the stored document
+        return Optional.of(value.isJsonPrimitive() ? value : value.deepCopy());
+    }
+
+    @Override
+    public Optional<JsonElement> getProperty(Player player, String property) {
+        return getProperty(getKey(player), property);
+    }
+
+    @Override
+    public Map<String, JsonElement> getProperties(Player player, String... properties) {
+        Map<String, JsonElement> playerProperties = getPlayerProperties(getKey(player));
+        Map<String, JsonElement> result = new HashMap<>();
+
+        if (playerProperties == null) {
+            return result;
+        }
+
+        for (String property : properties) {
+            JsonElement value = playerProperties.get(property);
+
+            if (value != null) {
+                result.put(property, value.isJsonPrimitive() ? value : value.deepCopy());
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public boolean isLoaded(Player player) {
+        return !perPlayer || players.containsKey(getKey(player));
+    }
+
+    @Override
+    public void whenLoaded(Player player, Runnable task) {
+        String key = getKey(player);
+
+        if (perPlayer) {
+            synchronized (loadTasks) {
+                if (!players.containsKey(key)) {
+                    loadPlayerAsync(key, task);
+                    return;
+                }
+            }
+        }
+
+        task.run();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        journalQueue.add(JOURNAL_WAKEUP);
+
+        try {
+            journalThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        compact();
+
+        if (journalChannel != null) {
+            try {
+                journalChannel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void runJournal() {
+        long nextCompaction = System.currentTimeMillis() + compactionInterval;
+        List<String> batch = new ArrayList<>();
+
+        while (running) {
+            try {
+                String record = journalQueue.poll(
+                        Math.max(1, nextCompaction - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+                if (record != null) {
+                    batch.add(record);
+                    journalQueue.drainTo(batch);
+                    appendJournal(batch);
+                    batch.clear();
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            if (System.currentTimeMillis() >= nextCompaction) {
+                compact();
+                nextCompaction = System.currentTimeMillis() + compactionInterval;
+            }
+        }
+
+        journalQueue.drainTo(batch);
+        appendJournal(batch);
+    }
+
+    /**
+     * Appends records to the journal and syncs them with a single fsync
+     */
+    private void appendJournal(List<String> records) {
+        if (journalChannel == null) {
+            return;
+        }
+
+        StringBuilder stringBuilder = new StringBuilder();
+        for (String record : records) {
+            if (!record.isEmpty()) {
+                stringBuilder.append(record).append('\n');
+            }
+        }
+
+        if (stringBuilder.length() == 0) {
+            return;
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(stringBuilder.toString().getBytes(StandardCharsets.UTF_8));
+
+            while (buffer.hasRemaining()) {
+                journalChannel.write(buffer);
+            }
+
+            journalChannel.force(false);
+        } catch (IOException e) {
+            // Data is still in memory and will be saved on the next compaction
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes changed data to storage files and truncates the journal.
+     * Records appended after the truncation may repeat already written changes,
+     * which is harmless, as replaying them gives the same result.
+     */
+    private void compact() {
+        synchronized (flushLock) {
+            if (!writeSnapshot() || journalChannel == null) {
+                return;
+            }
+
+            try {
+                journalChannel.truncate(0);
+                journalChannel.force(true);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private boolean writeSnapshot() {
+        synchronized (flushLock) {
+            if (perPlayer) {
+                boolean success = true;
+                for (String player : new ArrayList<>(dirtyPlayers)) {
+                    success &= savePlayer(player);
+                }
+
+                // Players that have quit are kept until their data is saved
+                synchronized (unloadingPlayers) {
+                    unloadingPlayers.keySet().removeIf(player -> !dirtyPlayers.contains(player));
+                }
+                return success;
+            }
+
+            if (dirtyPlayers.isEmpty()) {
+                return true;
+            }
+
+            dirtyPlayers.clear();
+
+            JsonObject jsonObject = new JsonObject();
+            players.forEach((player, properties) -> properties.forEach((property, value) -> {
+                JsonElement propertyElement = jsonObject.get(property);
+
+                if (propertyElement == null) {
+                    propertyElement = new JsonObject();
+                    jsonObject.add(property, propertyElement);
+                }
+
+                propertyElement.getAsJsonObject().add(player, value);
+            }));
+
+            try {
+                write(storageFile, GSON.toJson(jsonObject));
+            } catch (IOException e) {
+                dirtyPlayers.addAll(players.keySet());
+                e.printStackTrace();
+                return false;
+            }
+
+            return true;
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            String player = chatty.settings().isUuid()
+                    ? event.getUniqueId().toString() : event.getName();
+
+            sessions.preLogin(player);
+            loadPlayer(player);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent event) {
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            sessions.loginRejected(getKey(event.getPlayer()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent event) {
+        sessions.join(getKey(event.getPlayer()));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        sessions.quit(getKey(event.getPlayer()));
+    }
+
+    private String getKey(Player player) {
+        return chatty.settings().isUuid()
+                ? player.getUniqueId().toString() : player.getName();
+    }
+
+    /**
+     * Returns properties of the player, never reads files.
+     * Data of online player which was not loaded on pre-login is loaded in the background,
+     * until then {@link #isLoaded(Player)} is false.
+     * @return properties, or null if they are not loaded and the player has no unsaved changes
+     */
+    private Map<String, JsonElement> getPlayerProperties(String player) {
+        Map<String, JsonElement> properties = players.get(player);
+
+        if (properties != null || !perPlayer) {
+            return properties;
+        }
+
+        if (sessions.isActive(player)) {
+            loadPlayerAsync(player, null);
+        }
+
+        return unloadingPlayers.get(player);
+    }
+
+    private void loadPlayerAsync(String player, Runnable task) {
+        synchronized (loadTasks) {
+            List<Runnable> tasks = loadTasks.get(player);
+
+            if (tasks == null) {
+                tasks = new ArrayList<>();
+                loadTasks.put(player, tasks);
+
+                Bukkit.getScheduler().runTaskAsynchronously(chatty, () -> {
+                    loadPlayer(player);
+
+                    List<Runnable> loadedTasks;
+                    synchronized (loadTasks) {
+                        loadedTasks = loadTasks.remove(player);
+                    }
+
+                    // Player has quit or the login was rejected while the data was loaded
+                    if (!sessions.isActive(player)) {
+                        unloadPlayer(player);
+                        return;
+                    }
+
+                    loadedTasks.forEach(Runnable::run);
+                });
+            }
+
+            if (task != null) {
+                tasks.add(task);
+            }
+        }
+    }
+
+    private Map<String, JsonElement> getCachedProperties(String player) {
+        Map<String, JsonElement> properties = players.get(player);
+        return properties == null ? unloadingPlayers.get(player) : properties;
+    }
+
+    private Map<String, JsonElement> loadPlayer(String player) {
+        // Changes of offline player are made under the same lock, so they are never made to another copy
+        synchronized (flushLock) {
+            // Player has rejoined before his data was saved
+            return players.computeIfAbsent(player, key -> unloadingPlayers.containsKey(key)
+                    ? unloadingPlayers.get(key) : readProperties(key));
+        }
+    }
+
+    private Map<String, JsonElement> readProperties(String player) {
+        Map<String, JsonElement> properties = new ConcurrentHashMap<>();
+
+        try {
+            JsonObject jsonObject = readPlayer(player);
+
+            for (Map.Entry<String, JsonElement> entry : jsonObject.entrySet()) {
+                properties.put(entry.getKey(), entry.getValue());
+            }
+        } catch (IOException | JsonParseException e) {
+            e.printStackTrace();
+        }
+
+        return properties;
+    }
+
+    private void unloadPlayer(String player) {
+        // Compaction must always find the player in one of the maps, otherwise changes are lost with the journal
+        synchronized (flushLock) {
+            Map<String, JsonElement> properties = players.get(player);
+
+            if (properties == null) {
+                return;
+            }
+
+            // Changes are already in the journal, the file is written on the next compaction,
+            // players without changes are dropped by it
+            unloadingPlayers.put(player, properties);
+            players.remove(player);
+        }
+    }
+
+    private boolean savePlayer(String player) {
+        if (!dirtyPlayers.remove(player)) {
+            return true;
+        }
+
+        Map<String, JsonElement> properties = players.get(player);
+
+        if (properties == null) {
+            properties = unloadingPlayers.get(player);
+        }
+
+        if (properties == null) {
+            return true;
+        }
+
+        JsonObject jsonObject = new JsonObject();
+        properties.forEach(jsonObject::add);
+
+        try {
+            write(getPlayerFile(player), GSON.toJson(jsonObject));
+        } catch (IOException e) {
+            dirtyPlayers.add(player);
+            e.printStackTrace();
+            return false;
+        }
+
+        return true;
+    }
+
+    private File getPlayerFile(String player) {
+        return new File(playersDirectory, player + ".json");
+    }
+
+    private JsonObject readPlayer(String player) throws IOException {
+        File playerFile = getPlayerFile(player);
+
+        if (!playerFile.exists()) {
+            return new JsonObject();
+        }
+
+        JsonElement jsonElement = JSON_PARSER.parse(read(playerFile));
+        return jsonElement.isJsonObject() ? jsonElement.getAsJsonObject() : new JsonObject();
+    }
+
+    private void load() {
+        JsonElement jsonObject;
+        try {
+            jsonObject = JSON_PARSER.parse(read(storageFile));
+        } catch (IOException | JsonParseException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        if (!jsonObject.isJsonObject()) {
+            return;
+        }
+
+        for (Map.Entry<String, JsonElement> propertyEntry : jsonObject.getAsJsonObject().entrySet()) {
+            if (!propertyEntry.getValue().isJsonObject()) {
+                continue;
+            }
+
+            for (Map.Entry<String, JsonElement> playerEntry : propertyEntry.getValue().getAsJsonObject().entrySet()) {
+                players.computeIfAbsent(playerEntry.getKey(), key -> new ConcurrentHashMap<>())
+                        .put(propertyEntry.getKey(), playerEntry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Applies changes left in the journal after an unexpected shutdown
+     * @return true if any change has been replayed
+     */
+    private boolean replayJournal() {
+        if (!journalFile.exists() || journalFile.length() == 0) {
+            return false;
+        }
+
+        int replayed = 0;
+        int skipped = 0;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(journalFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+
+                try {
+                    JsonObject record = JSON_PARSER.parse(line).getAsJsonObject();
+                    applyProperty(record.get("k").getAsString(), record.get("p").getAsString(), record.get("v"));
+                    replayed++;
+                } catch (JsonParseException | IllegalStateException | NullPointerException e) {
+                    // Record was not completely written before the crash
+                    skipped++;
+                }
+            }
+        } catch (IOException e) {
+            chatty.getLogger().warning("Cannot read storage.journal");
+            e.printStackTrace();
+        }
+
+        if (skipped > 0) {
+            chatty.getLogger().warning(skipped + " broken record(s) have been skipped in storage.journal");
+        }
+
+        if (replayed > 0) {
+            chatty.getLogger().info(replayed + " change(s) have been restored from storage.journal");
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Moves data from the single "storage.json" into per-player files.
+     * The file is read as a stream, so only a batch of players is kept in memory.
+     */
+    private void migrate() {
+        Map<String, JsonObject> batch = new HashMap<>();
+
+        try (JsonReader reader = new JsonReader(new FileReader(storageFile))) {
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+
+                while (reader.hasNext()) {
+                    String property = reader.nextName();
+
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+
+                    reader.beginObject();
+
+                    while (reader.hasNext()) {
+                        String player = reader.nextName();
+                        batch.computeIfAbsent(player, key -> new JsonObject()).add(property, JSON_PARSER.parse(reader));
+
+                        if (batch.size() >= MIGRATION_BATCH_SIZE) {
+                            mergePlayers(batch);
+                        }
+                    }
+
+                    reader.endObject();
+                }
+
+                reader.endObject();
+            }
+        } catch (EOFException ignored) {
+            // storage.json is empty
+        } catch (IOException | JsonParseException e) {
+            chatty.getLogger().warning("Cannot migrate storage.json to per-player storage");
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            mergePlayers(batch);
+        } catch (IOException e) {
+            chatty.getLogger().warning("Cannot migrate storage.json to per-player storage");
+            e.printStackTrace();
+            return;
+        }
+
+        if (!storageFile.renameTo(new File(chatty.getDataFolder(), "storage.json.migrated"))) {
+            chatty.getLogger().warning("Cannot rename migrated storage.json");
+        }
+
+        chatty.getLogger().info("storage.json has been migrated to per-player storage.");
+    }
+
+    private void mergePlayers(Map<String, JsonObject> batch) throws IOException {
+        for (Map.Entry<String, JsonObject> entry : batch.entrySet()) {
+            JsonObject jsonObject = readPlayer(entry.getKey());
+
+            for (Map.Entry<String, JsonElement> property : entry.getValue().entrySet()) {
+                jsonObject.add(property.getKey(), property.getValue());
+            }
+
+            write(getPlayerFile(entry.getKey()), GSON.toJson(jsonObject));
+        }
+
+        batch.clear();
+    }
+
+    private String read(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        StringBuilder stringBuilder = new StringBuilder();
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            stringBuilder.append(line);
+        }
+
+        reader.close();
+
+        return stringBuilder.toString();
+    }
+
+    /**
+     * Writes file through a temporary file, so the old content is kept if writing fails
+     */
+    private void write(File file, String json) throws IOException {
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(outputStream));
+
+            writer.write(json);
+            writer.flush();
+            outputStream.getFD().sync();
+        }
+
+        try {
+            Files.move(tempFile.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package ru.mrbrikster.chatty.storage;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Storage keys of players whose data is kept in memory: online players
+ * and players between pre-login and join.
+ *
+ * Login may still be rejected after pre-login (whitelist, ban, full server, other plugins),
+ * or the connection may be lost, and no quit event is called then.
+ * Data of such players is evicted on rejected login, or a minute after pre-login.
+ */
+final class PlayerSessions {
+
+    private static final long LOGIN_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    private final Set<String> online = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> loggingIn = new ConcurrentHashMap<>();
+    private final Consumer<String> evict;
+
+    /**
+     * @param evict removes data of the player from memory
+     */
+    PlayerSessions(Consumer<String> evict) {
+        this.evict = evict;
+    }
+
+    void preLogin(String player) {
+        expireLogins();
+        loggingIn.put(player, System.currentTimeMillis());
+    }
+
+    void loginRejected(String player) {
+        if (loggingIn.remove(player) != null && !online.contains(player)) {
+            evict.accept(player);
+        }
+    }
+
+    void join(String player) {
+        online.add(player);
+        loggingIn.remove(player);
+    }
+
+    void quit(String player) {
+        online.remove(player);
+
+        // The player is already connecting again
+        if (!loggingIn.containsKey(player)) {
+            evict.accept(player);
+        }
+    }
+
+    /**
+     * Checks if data of the player should be kept in memory
+     * @param player storage key of the player
+     * @return true if player is online or is joining
+     */
+    boolean isActive(String player) {
+        return online.contains(player) || loggingIn.containsKey(player);
+    }
+
+    private void expireLogins() {
+        long minTime = System.currentTimeMillis() - LOGIN_TIMEOUT;
+
+        for (Map.Entry<String, Long> entry : loggingIn.entrySet()) {
+            if (entry.getValue() < minTime && loggingIn.remove(entry.getKey(), entry.getValue())
+                    && !online.contains(entry.getKey())) {
+                evict.accept(entry.getKey());
+            }
+        }
+    }
+
+}
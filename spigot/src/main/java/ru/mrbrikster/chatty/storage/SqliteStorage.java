@@ -0,0 +1,457 @@
+package ru.mrbrikster.chatty.storage;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import ru.mrbrikster.chatty.Chatty;
+import ru.mrbrikster.chatty.reflection.Reflection;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.*;
+
+/**
+ * Keeps player properties in embedded SQLite database "storage.db".
+ * SQLite driver is bundled with the server, so no additional libraries are required.
+ *
+ * Properties of online players are cached in memory, so reads never touch the database.
+ * All queries are executed sequentially on the single storage thread:
+ * changes are written in the background and player data is loaded before the player joins.
+ * Data of offline players is never cached, their changes are only written to the database.
+ */
+public class SqliteStorage implements StorageBackend, Listener {
+
+    private static final JsonParser JSON_PARSER = new JsonParser();
+    private static final int IMPORT_BATCH_SIZE = 1000;
+    private static final JsonElement REMOVED = new JsonObject();
+
+    private final Map<String, Map<String, JsonElement>> players = new ConcurrentHashMap<>();
+    private final PlayerSessions sessions = new PlayerSessions(this::evictPlayer);
+
+    // Changes made while the player data is loaded, REMOVED for deleted properties. Guarded by itself
+    private final Map<String, Map<String, JsonElement>> loadingPlayers = new HashMap<>();
+
+    // Tasks waiting for the player data, guarded by loadingPlayers
+    private final Map<String, List<Runnable>> loadTasks = new HashMap<>();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Chatty Storage");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Chatty chatty;
+    private final Connection connection;
+    private final PreparedStatement selectStatement;
+    private final PreparedStatement upsertStatement;
+    private final PreparedStatement deleteStatement;
+
+    public SqliteStorage(Chatty chatty) throws ClassNotFoundException, SQLException {
+        this.chatty = chatty;
+
+        Class.forName("org.sqlite.JDBC");
+        this.connection = DriverManager.getConnection("jdbc:sqlite:"
+                + new File(chatty.getDataFolder(), "storage.db").getAbsolutePath());
+
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute("CREATE TABLE IF NOT EXISTS chatty_properties ("
+                    + "player VARCHAR(36) NOT NULL, "
+                    + "property VARCHAR(64) NOT NULL, "
+                    + "value TEXT NOT NULL, "
+                    + "PRIMARY KEY (player, property))");
+        }
+
+        this.selectStatement = connection.prepareStatement(
+                "SELECT property, value FROM chatty_properties WHERE player = ?");
+        this.upsertStatement = connection.prepareStatement(
+                "INSERT OR REPLACE INTO chatty_properties (player, property, value) VALUES (?, ?, ?)");
+        this.deleteStatement = connection.prepareStatement(
+                "DELETE FROM chatty_properties WHERE player = ? AND property = ?");
+
+        File storageFile = new File(chatty.getDataFolder(), "storage.json");
+        if (storageFile.exists() && isEmpty()) {
+            importJson(storageFile);
+        }
+
+        // Players that joined before the plugin was enabled
+        List<Future<?>> futures = new ArrayList<>();
+        for (Player player : Reflection.getOnlinePlayers()) {
+            sessions.join(getKey(player));
+            futures.add(loadPlayer(getKey(player)));
+        }
+
+        futures.forEach(this::await);
+
+        Bukkit.getPluginManager().registerEvents(this, chatty);
+    }
+
+    @Override
+    public Optional<JsonElement> getProperty(Player player, String property) {
+        JsonElement value = getPlayerProperties(getKey(player)).get(property);
+
+        if (value == null) {
+            return Optional.empty();
+        }
+
+        return Optional.of(value.isJsonPrimitive() ? value : value.deepCopy());
+    }
+
+    @Override
+    public Map<String, JsonElement> getProperties(Player player, String... properties) {
+        Map<String, JsonElement> playerProperties = getPlayerProperties(getKey(player));
+        Map<String, JsonElement> result = new HashMap<>();
+
+        for (String property : properties) {
+            JsonElement value = playerProperties.get(property);
+
+            if (value != null) {
+                result.put(property, value.isJsonPrimitive() ? value : value.deepCopy());
+            }
+        }
+
+        return result;
+    }
+
+    @Override
+    public void setProperty(Player player, String property, JsonElement value) {
+        String key = getKey(player);
+        JsonElement copy = value == null ? null : value.deepCopy();
+
+        // Queued in the same order as loads, so a load sees either the written change or the recorded one
+        synchronized (loadingPlayers) {
+            Map<String, JsonElement> properties = players.get(key);
+
+            if (properties != null) {
+                if (copy == null) {
+                    if (properties.remove(property) == null) {
+                        return;
+                    }
+                } else {
+                    properties.put(property, copy);
+                }
+            } else if (loadingPlayers.containsKey(key)) {
+                loadingPlayers.get(key).put(property, copy == null ? REMOVED : copy);
+            }
+
+            if (copy == null) {
+                execute(() -> {
+                    deleteStatement.setString(1, key);
+                    deleteStatement.setString(2, property);
+                    deleteStatement.executeUpdate();
+                });
+            } else {
+                String json = copy.toString();
+                execute(() -> {
+                    upsertStatement.setString(1, key);
+                    upsertStatement.setString(2, property);
+                    upsertStatement.setString(3, json);
+                    upsertStatement.executeUpdate();
+                });
+            }
+        }
+    }
+
+    @Override
+    public boolean isLoaded(Player player) {
+        return players.containsKey(getKey(player));
+    }
+
+    @Override
+    public void whenLoaded(Player player, Runnable task) {
+        String key = getKey(player);
+
+        synchronized (loadingPlayers) {
+            if (!players.containsKey(key)) {
+                loadTasks.computeIfAbsent(key, k -> new ArrayList<>()).add(task);
+                loadPlayer(key);
+                return;
+            }
+        }
+
+        task.run();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                chatty.getLogger().warning("Cannot write all player data to storage.db in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPreLogin(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            String player = chatty.settings().isUuid()
+                    ? event.getUniqueId().toString() : event.getName();
+
+            sessions.preLogin(player);
+
+            // Pre-login is called asynchronously, so it may wait for the query
+            await(loadPlayer(player));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onLogin(PlayerLoginEvent event) {
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED) {
+            sessions.loginRejected(getKey(event.getPlayer()));
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent event) {
+        sessions.join(getKey(event.getPlayer()));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        // Pending changes are already queued, so the player can be dropped from cache
+        sessions.quit(getKey(event.getPlayer()));
+    }
+
+    private String getKey(Player player) {
+        return chatty.settings().isUuid()
+                ? player.getUniqueId().toString() : player.getName();
+    }
+
+    /**
+     * Returns cached properties of the player, never waits for the database.
+     * Data of online player which is not cached yet is loaded in the background,
+     * until then properties are empty and {@link #isLoaded(Player)} is false.
+     */
+    private Map<String, JsonElement> getPlayerProperties(String player) {
+        Map<String, JsonElement> properties = players.get(player);
+
+        if (properties != null) {
+            return properties;
+        }
+
+        if (sessions.isActive(player)) {
+            loadPlayer(player);
+        }
+
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Starts loading of the player data on the storage thread
+     * @return future of the query, or null if the data is already cached or loaded
+     */
+    private Future<?> loadPlayer(String player) {
+        synchronized (loadingPlayers) {
+            if (players.containsKey(player) || loadingPlayers.containsKey(player)) {
+                return null;
+            }
+
+            loadingPlayers.put(player, new HashMap<>());
+
+            // Queries are executed on the storage thread,
+            // so data is loaded after all pending changes of this player are written
+            try {
+                return executor.submit(() -> {
+                    Map<String, JsonElement> properties = selectPlayer(player);
+                    List<Runnable> tasks;
+
+                    synchronized (loadingPlayers) {
+                        Map<String, JsonElement> changes = loadingPlayers.remove(player);
+
+                        // Waiting tasks are run after the next successful load
+                        if (properties == null) {
+                            return;
+                        }
+
+                        // Player has quit or the login was rejected while the data was loaded
+                        if (!sessions.isActive(player)) {
+                            loadTasks.remove(player);
+                            return;
+                        }
+
+                        changes.forEach((property, value) -> {
+                            if (value == REMOVED) {
+                                properties.remove(property);
+                            } else {
+                                properties.put(property, value);
+                            }
+                        });
+
+                        players.put(player, properties);
+                        tasks = loadTasks.remove(player);
+                    }
+
+                    if (tasks != null) {
+                        tasks.forEach(Runnable::run);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                loadingPlayers.remove(player);
+                return null;
+            }
+        }
+    }
+
+    private void evictPlayer(String player) {
+        players.remove(player);
+
+        synchronized (loadingPlayers) {
+            loadTasks.remove(player);
+        }
+    }
+
+    private Map<String, JsonElement> selectPlayer(String player) {
+        Map<String, JsonElement> properties = new ConcurrentHashMap<>();
+
+        try {
+            selectStatement.setString(1, player);
+
+            try (ResultSet resultSet = selectStatement.executeQuery()) {
+                while (resultSet.next()) {
+                    try {
+                        properties.put(resultSet.getString(1), JSON_PARSER.parse(resultSet.getString(2)));
+                    } catch (JsonParseException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            // Not cached, so it is loaded again on the next access
+            e.printStackTrace();
+            return null;
+        }
+
+        return properties;
+    }
+
+    private void await(Future<?> future) {
+        if (future == null) {
+            return;
+        }
+
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void execute(SqlTask task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (SQLException e) {
+                    e.printStackTrace();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            chatty.getLogger().warning("Cannot save player data: storage is closed");
+        }
+    }
+
+    private boolean isEmpty() throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT 1 FROM chatty_properties LIMIT 1")) {
+            return !resultSet.next();
+        }
+    }
+
+    /**
+     * Imports data from "storage.json" into empty database.
+     * The file is read as a stream and left untouched, so it is possible to switch back to JSON storage.
+     */
+    private void importJson(File storageFile) throws SQLException {
+        connection.setAutoCommit(false);
+
+        try (JsonReader reader = new JsonReader(new FileReader(storageFile))) {
+            int batchSize = 0;
+
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                reader.beginObject();
+
+                while (reader.hasNext()) {
+                    String property = reader.nextName();
+
+                    if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                        reader.skipValue();
+                        continue;
+                    }
+
+                    reader.beginObject();
+
+                    while (reader.hasNext()) {
+                        upsertStatement.setString(1, reader.nextName());
+                        upsertStatement.setString(2, property);
+                        upsertStatement.setString(3, JSON_PARSER.parse(reader).toString());
+                        upsertStatement.addBatch();
+
+                        if (++batchSize >= IMPORT_BATCH_SIZE) {
+                            upsertStatement.executeBatch();
+                            batchSize = 0;
+                        }
+                    }
+
+                    reader.endObject();
+                }
+
+                reader.endObject();
+            }
+
+            upsertStatement.executeBatch();
+            connection.commit();
+
+            chatty.getLogger().info("storage.json has been imported to storage.db.");
+        } catch (EOFException ignored) {
+            // storage.json is empty
+            connection.rollback();
+        } catch (IOException | JsonParseException | SQLException e) {
+            connection.rollback();
+            chatty.getLogger().warning("Cannot import storage.json to storage.db");
+            e.printStackTrace();
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private interface SqlTask {
+
+        void run() throws SQLException;
+
+    }
+
+}
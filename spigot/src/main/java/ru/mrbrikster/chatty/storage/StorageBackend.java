@@ -0,0 +1,114 @@
+package ru.mrbrikster.chatty.storage;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonPrimitive;
+import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Storage of player properties, such as prefix, ignore list or current chat.
+ * Implementation is selected with "general.storage.type" option.
+ */
+public interface StorageBackend {
+
+    /**
+     * Returns value of player property
+     * @param player player to read property of
+     * @param property property name
+     * @return optional property value
+     */
+    @NotNull
+    Optional<JsonElement> getProperty(@NotNull Player player, @NotNull String property);
+
+    /**
+     * Returns values of several player properties with a single lookup
+     * @param player player to read properties of
+     * @param properties property names
+     * @return map of existing properties to their values
+     */
+    @NotNull
+    Map<String, JsonElement> getProperties(@NotNull Player player, @NotNull String... properties);
+
+    /**
+     * Sets value of player property
+     * @param player player to change property of
+     * @param property property name
+     * @param value new value, or null to remove property
+     */
+    void setProperty(@NotNull Player player, @NotNull String property, @Nullable JsonElement value);
+
+    /**
+     * Checks if properties of the player are loaded. Properties which are not loaded yet
+     * are read as missing, so they must not be changed based on the read values
+     * @param player player to check
+     * @return true if properties are loaded
+     */
+    boolean isLoaded(@NotNull Player player);
+
+    /**
+     * Runs the task once properties of the player are loaded
+     * @param player online player
+     * @param task task, run immediately if properties are already loaded, otherwise on a storage thread
+     */
+    void whenLoaded(@NotNull Player player, @NotNull Runnable task);
+
+    /**
+     * Writes pending changes and releases resources
+     */
+    void close();
+
+    default void removeProperty(@NotNull Player player, @NotNull String property) {
+        setProperty(player, property, null);
+    }
+
+    @NotNull
+    default Optional<String> getString(@NotNull Player player, @NotNull String property) {
+        return getProperty(player, property)
+                .filter(JsonElement::isJsonPrimitive)
+                .map(JsonElement::getAsString);
+    }
+
+    default boolean getBoolean(@NotNull Player player, @NotNull String property, boolean def) {
+        return getProperty(player, property)
+                .filter(JsonElement::isJsonPrimitive)
+                .map(JsonElement::getAsBoolean)
+                .orElse(def);
+    }
+
+    @NotNull
+    default List<String> getStringList(@NotNull Player player, @NotNull String property) {
+        List<String> list = new ArrayList<>();
+
+        getProperty(player, property).filter(JsonElement::isJsonArray).ifPresent(jsonElement -> {
+            for (JsonElement element : jsonElement.getAsJsonArray()) {
+                list.add(element.getAsString());
+            }
+        });
+
+        return list;
+    }
+
+    default void setString(@NotNull Player player, @NotNull String property, @Nullable String value) {
+        setProperty(player, property, value == null ? null : new JsonPrimitive(value));
+    }
+
+    default void setBoolean(@NotNull Player player, @NotNull String property, boolean value) {
+        setProperty(player, property, new JsonPrimitive(value));
+    }
+
+    default void setStringList(@NotNull Player player, @NotNull String property, @NotNull Collection<String> value) {
+        JsonArray jsonArray = new JsonArray();
+        value.forEach(jsonArray::add);
+
+        setProperty(player, property, jsonArray);
+    }
+
+}
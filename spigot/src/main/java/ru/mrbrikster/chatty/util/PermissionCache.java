@@ -0,0 +1,167 @@
+package ru.mrbrikster.chatty.util;
+
+import lombok.Getter;
+import org.bukkit.Bukkit;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+import ru.mrbrikster.baseplugin.config.Configuration;
+import ru.mrbrikster.chatty.Chatty;
+import ru.mrbrikster.chatty.reflection.Reflection;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Caches results of permission checks used while processing chat messages.
+ * Every known permission node has an index, and each online player
+ * has a bitset of granted nodes, so a check is a single bit test.
+ *
+ * Bitsets are computed on the main thread on join, world change, configuration reload
+ * and every "general.permissions-cache.refresh-interval" seconds.
+ * Nodes registered after the last refresh are checked directly until the next one.
+ */
+public class PermissionCache implements Listener {
+
+    private final Chatty chatty;
+    private final Configuration configuration;
+
+    private final Map<String, Node> nodes = new ConcurrentHashMap<>();
+    private final List<Node> nodeList = new CopyOnWriteArrayList<>();
+    private final Map<UUID, long[]> players = new ConcurrentHashMap<>();
+
+    private volatile boolean enabled;
+    private BukkitTask refreshTask;
+
+    public PermissionCache(Chatty chatty) {
+        this.chatty = chatty;
+        this.configuration = chatty.getExact(Configuration.class);
+
+        Bukkit.getPluginManager().registerEvents(this, chatty);
+
+        init();
+        configuration.onReload(config -> {
+            if (refreshTask != null) {
+                refreshTask.cancel();
+            }
+
+            init();
+        });
+    }
+
+    private void init() {
+        this.enabled = configuration.getNode("general.permissions-cache.enable").getAsBoolean(true);
+
+        if (!enabled) {
+            players.clear();
+            return;
+        }
+
+        long interval = Math.max(1, configuration.getNode("general.permissions-cache.refresh-interval").getAsLong(30)) * 20;
+
+        // Players are refreshed on the next tick, when all plugin components are ready
+        this.refreshTask = Bukkit.getScheduler().runTaskTimer(chatty, this::refreshAll, 1L, interval);
+    }
+
+    /**
+     * Returns node handle, registering it if it is not known yet
+     * @param name permission node
+     * @return node handle
+     */
+    @NotNull
+    public Node node(@NotNull String name) {
+        Node node = nodes.get(name);
+
+        if (node != null) {
+            return node;
+        }
+
+        synchronized (nodeList) {
+            return nodes.computeIfAbsent(name, key -> {
+                Node newNode = new Node(key, nodeList.size());
+                nodeList.add(newNode);
+                return newNode;
+            });
+        }
+    }
+
+    public boolean has(@NotNull CommandSender sender, @NotNull String name) {
+        return has(sender, node(name));
+    }
+
+    public boolean has(@NotNull CommandSender sender, @NotNull Node node) {
+        if (enabled && sender instanceof Player) {
+            long[] granted = players.get(((Player) sender).getUniqueId());
+
+            // The last word keeps the number of nodes computed for the player
+            if (granted != null && node.index < granted[granted.length - 1]) {
+                return (granted[node.index >>> 6] & (1L << node.index)) != 0;
+            }
+        }
+
+        return sender.hasPermission(node.name);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onJoin(PlayerJoinEvent event) {
+        refresh(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChangedWorld(PlayerChangedWorldEvent event) {
+        refresh(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        players.remove(event.getPlayer().getUniqueId());
+    }
+
+    private void refreshAll() {
+        for (Player player : Reflection.getOnlinePlayers()) {
+            refresh(player);
+        }
+    }
+
+    private void refresh(Player player) {
+        if (!enabled) {
+            return;
+        }
+
+        int count = nodeList.size();
+
+        long[] granted = new long[((count + 63) >>> 6) + 1];
+        for (int i = 0; i < count; i++) {
+            if (player.hasPermission(nodeList.get(i).name)) {
+                granted[i >>> 6] |= 1L << i;
+            }
+        }
+
+        granted[granted.length - 1] = count;
+        players.put(player.getUniqueId(), granted);
+    }
+
+    @Getter
+    public static final class Node {
+
+        private final String name;
+        private final int index;
+
+        private Node(String name, int index) {
+            this.name = name;
+            this.index = index;
+        }
+
+    }
+
+}
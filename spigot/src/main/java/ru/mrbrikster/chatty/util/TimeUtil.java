@@ -0,0 +1,85 @@
+package ru.mrbrikster.chatty.util;
+
+import lombok.experimental.UtilityClass;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.TimeUnit;
+
+@UtilityClass
+public class TimeUtil {
+
+    private final String UNITS = "smhdw";
+    private final long[] UNIT_MILLIS = {
+            TimeUnit.SECONDS.toMillis(1),
+            TimeUnit.MINUTES.toMillis(1),
+            TimeUnit.HOURS.toMillis(1),
+            TimeUnit.DAYS.toMillis(1),
+            TimeUnit.DAYS.toMillis(7)
+    };
+    private final long MAX_DURATION = TimeUnit.DAYS.toMillis(365 * 100);
+
+    /**
+     * Parses duration like "30s", "10m", "1h30m" or "7d"
+     * @param duration duration with units: s, m, h, d, w
+     * @return duration in milliseconds, or -1 if duration is invalid or longer than 100 years
+     */
+    public long parseDuration(@NotNull String duration) {
+        long millis = 0, value = -1;
+
+        for (int i = 0; i < duration.length(); i++) {
+            char c = Character.toLowerCase(duration.charAt(i));
+
+            if (c >= '0' && c <= '9') {
+                value = Math.max(value, 0) * 10 + c - '0';
+
+                if (value > MAX_DURATION / UNIT_MILLIS[0]) {
+                    return -1;
+                }
+
+                continue;
+            }
+
+            int unit = UNITS.indexOf(c);
+            if (unit < 0 || value < 0) {
+                return -1;
+            }
+
+            millis += value * UNIT_MILLIS[unit];
+            value = -1;
+
+            if (millis > MAX_DURATION) {
+                return -1;
+            }
+        }
+
+        return value >= 0 || millis == 0 ? -1 : millis;
+    }
+
+    /**
+     * Formats duration like "1d 2h 30m", seconds are shown only for durations shorter than an hour
+     * @param millis duration in milliseconds
+     * @return formatted duration
+     */
+    @NotNull
+    public String formatDuration(long millis) {
+        StringBuilder builder = new StringBuilder();
+        int smallestUnit = millis < UNIT_MILLIS[2] ? 0 : 1;
+
+        // Weeks are shown as days
+        for (int unit = UNITS.length() - 2; unit >= smallestUnit; unit--) {
+            long value = millis / UNIT_MILLIS[unit];
+
+            if (value > 0) {
+                if (builder.length() != 0) {
+                    builder.append(' ');
+                }
+
+                builder.append(value).append(UNITS.charAt(unit));
+                millis -= value * UNIT_MILLIS[unit];
+            }
+        }
+
+        return builder.length() == 0 ? "0" + UNITS.charAt(smallestUnit) : builder.toString();
+    }
+
+}
@@ -0,0 +1,182 @@
+package ru.mrbrikster.chatty.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical hashed timing wheel.
+ *
+ * Timeouts are kept in linked slots of several wheels of 64 slots, each wheel being
+ * 64 times coarser than the previous one. Scheduling and cancelling take constant time,
+ * advancing by one tick expires one slot of the finest wheel and sometimes moves
+ * one slot of a coarser wheel down, so thousands of pending timeouts cost nothing
+ * until they expire. Timeouts farther than the coarsest wheel are moved down repeatedly.
+ *
+ * All methods are synchronized, expiration callbacks are run by the thread calling {@link #advance(long, Consumer)}.
+ * @param <T> type of timeout values
+ */
+public class TimingWheel<T> {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 5;
+
+    private final long tickMillis;
+    private final Timeout<T>[][] wheels;
+    private long currentTick;
+
+    /**
+     * Creates timing wheel, with one second ticks it covers about 34 years without moving timeouts down
+     * @param tickMillis tick duration, timeouts expire with this precision
+     * @param startMillis current time
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickMillis, long startMillis) {
+        this.tickMillis = tickMillis;
+        this.wheels = new Timeout[LEVELS][WHEEL_SIZE];
+        this.currentTick = startMillis / tickMillis;
+    }
+
+    /**
+     * Schedules timeout
+     * @param value timeout value, passed to the expiration callback
+     * @param deadlineMillis time of expiration
+     * @return timeout handle
+     */
+    @NotNull
+    public synchronized Timeout<T> schedule(@NotNull T value, long deadlineMillis) {
+        // Rounded up, so timeouts never expire earlier than requested
+        Timeout<T> timeout = new Timeout<>(value, (deadlineMillis + tickMillis - 1) / tickMillis);
+        place(timeout, currentTick + 1);
+
+        return timeout;
+    }
+
+    /**
+     * Cancels timeout
+     * @param timeout timeout handle
+     * @return false if timeout is already expired or cancelled
+     */
+    public synchronized boolean cancel(@NotNull Timeout<T> timeout) {
+        if (timeout.level < 0) {
+            return false;
+        }
+
+        unlink(timeout);
+        return true;
+    }
+
+    /**
+     * Advances wheel to the current time, expiring elapsed timeouts
+     * @param nowMillis current time
+     * @param expired callback for values of expired timeouts
+     */
+    public synchronized void advance(long nowMillis, @NotNull Consumer<T> expired) {
+        long targetTick = nowMillis / tickMillis;
+
+        while (currentTick < targetTick) {
+            currentTick++;
+
+            // Coarser slots starting now are moved down
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (WHEEL_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+
+                int slot = (int) (currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+                Timeout<T> timeout = wheels[level][slot];
+                wheels[level][slot] = null;
+
+                while (timeout != null) {
+                    Timeout<T> next = timeout.next;
+                    timeout.previous = timeout.next = null;
+
+                    // Slot of the current tick is expired below
+                    place(timeout, currentTick);
+                    timeout = next;
+                }
+            }
+
+            int slot = (int) currentTick & WHEEL_MASK;
+            Timeout<T> timeout = wheels[0][slot];
+            wheels[0][slot] = null;
+
+            while (timeout != null) {
+                Timeout<T> next = timeout.next;
+                timeout.previous = timeout.next = null;
+
+                if (timeout.tick <= currentTick) {
+                    timeout.level = -1;
+                    expired.accept(timeout.value);
+                } else {
+                    place(timeout, currentTick + 1);
+                }
+
+                timeout = next;
+            }
+        }
+    }
+
+    private void place(Timeout<T> timeout, long minimumTick) {
+        long tick = Math.max(timeout.tick, minimumTick);
+        long delta = tick - currentTick;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (WHEEL_BITS * (level + 1))) {
+            level++;
+        }
+
+        // Farther than the coarsest wheel, placed to its farthest slot
+        if (delta >= 1L << (WHEEL_BITS * LEVELS)) {
+            tick = currentTick + (1L << (WHEEL_BITS * LEVELS)) - 1;
+        }
+
+        int slot = (int) (tick >>> (WHEEL_BITS * level)) & WHEEL_MASK;
+
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.next = wheels[level][slot];
+
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+
+        wheels[level][slot] = timeout;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            wheels[timeout.level][timeout.slot] = timeout.next;
+        }
+
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+
+        timeout.previous = timeout.next = null;
+        timeout.level = -1;
+    }
+
+    public static final class Timeout<T> {
+
+        private final T value;
+        private final long tick;
+
+        // Position in wheels, level is -1 when timeout is expired or cancelled
+        private int level = -1;
+        private int slot;
+        private Timeout<T> previous;
+        private Timeout<T> next;
+
+        private Timeout(T value, long tick) {
+            this.value = value;
+            this.tick = tick;
+        }
+
+    }
+
+}